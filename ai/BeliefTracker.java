@@ -0,0 +1,142 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.BitSet;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+//Spectator keeping the set of nodes Mr. X could be at, as the detectives see the game.
+//After each of his moves the set is replaced by every node reachable from it with the ticket he used (any edge for a
+//SECRET ticket, ferries included), minus the nodes the detectives stand on; a detective moving onto a node removes it.
+//On a reveal round the set is just the revealed node again. The DOUBLE ticket itself does not move him: the model
+//announces both halves of a double move as separate moves, and those are propagated one at a time.
+//Two bitsets are swapped for the propagation, so following a game allocates nothing once the tracker has started.
+//The tracker starts with the first event it sees, Mr. X then being anywhere but on a detective; register it before
+//the game starts for the set to be exact.
+public final class BeliefTracker implements Spectator {
+
+	private final IndexedGraph graph;
+	private BitSet possible;
+	private BitSet next;
+	private final BitSet detectives;
+	private final int[] detectiveAt = new int[Colour.values().length];		//location per colour ordinal
+	private boolean[] rounds;				//null until the tracker has started
+	private int round;						//round Mr. X's next move is made in
+	private int lastRevealed;				//0 until Mr. X's location is revealed
+
+	public BeliefTracker(IndexedGraph graph) {
+		this.graph = graph;
+		this.possible = new BitSet(graph.maxNode() + 1);
+		this.next = new BitSet(graph.maxNode() + 1);
+		this.detectives = new BitSet(graph.maxNode() + 1);
+	}
+
+	//================================QUERIES===================================
+
+	//whether Mr. X could be at the node
+	public boolean isPossible(int node) {
+		return node >= 0 && possible.get(node);
+	}
+
+	//number of nodes Mr. X could be at
+	public int count() {
+		return possible.cardinality();
+	}
+
+	//the first node at or after from that Mr. X could be at, -1 if none; iterate with next(node + 1)
+	public int next(int from) {
+		return possible.nextSetBit(from);
+	}
+
+	//Mr. X's last revealed location, 0 if it has not been revealed yet
+	public int lastRevealed() {
+		return lastRevealed;
+	}
+
+	//whether the tracker has seen the game yet
+	public boolean started() {
+		return rounds != null;
+	}
+
+	//================================SPECTATOR===================================
+
+	@Override
+	public void onRoundStarted(ScotlandYardView view, int round) {
+		if (rounds == null) start(view);
+		this.round = round;
+	}
+
+	@Override
+	public void onMoveMade(ScotlandYardView view, Move move) {
+		if (rounds == null) start(view);
+		if (!(move instanceof TicketMove)) return; //passes do not move anyone, double moves are announced in halves
+		TicketMove ticketMove = (TicketMove) move;
+		if (move.colour().isDetective()) {
+			moveDetective(move.colour(), ticketMove.destination());
+			return;
+		}
+		//the round was started before the move was announced, so it is the one after the move
+		if (round > 0 && round <= rounds.length && rounds[round - 1]) reveal(ticketMove.destination());
+		else propagate(ticketMove.ticket());
+	}
+
+	//================================UPDATES===================================
+
+	//Mr. X is anywhere but on a detective, unless his location has been revealed already
+	private void start(ScotlandYardView view) {
+		List<Boolean> viewRounds = view.getRounds();
+		rounds = new boolean[viewRounds.size()];
+		for (int i = 0; i < rounds.length; i++)
+			rounds[i] = viewRounds.get(i);
+		round = view.getCurrentRound();
+
+		for (Colour colour : view.getPlayers()) {
+			if (colour == BLACK) continue;
+			int location = view.getPlayerLocation(colour).orElse(0);
+			detectiveAt[colour.ordinal()] = location;
+			if (location > 0) detectives.set(location);
+		}
+
+		int revealed = view.getPlayerLocation(BLACK).orElse(0);
+		if (revealed > 0) reveal(revealed);
+		else everywhere();
+	}
+
+	private void everywhere() {
+		possible.clear();
+		for (int i = 0; i < graph.nodeCount(); i++)
+			possible.set(graph.node(i));
+		possible.andNot(detectives);
+	}
+
+	private void reveal(int location) {
+		lastRevealed = location;
+		possible.clear();
+		possible.set(location);
+	}
+
+	private void propagate(Ticket ticket) {
+		next.clear();
+		for (int node = possible.nextSetBit(0); node >= 0; node = possible.nextSetBit(node + 1)) {
+			int[] destinations = ticket == Ticket.SECRET ? graph.neighbours(node)
+					: graph.neighbours(node, ticket.transport());
+			for (int destination : destinations)
+				next.set(destination);
+		}
+		next.andNot(detectives);
+		BitSet swap = possible;
+		possible = next;
+		next = swap;
+		if (possible.isEmpty()) everywhere(); //only when the tracker started late and missed a reveal
+	}
+
+	private void moveDetective(Colour colour, int destination) {
+		int from = detectiveAt[colour.ordinal()];
+		if (from > 0) detectives.clear(from);
+		detectiveAt[colour.ordinal()] = destination;
+		detectives.set(destination);
+		possible.clear(destination);
+	}
+}
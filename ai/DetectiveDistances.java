@@ -0,0 +1,194 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+//Distances between any node and the detectives, worked out once per decision of X_AI instead of once per move it scores.
+//prepare() reads where the detectives are; shortest() and sum() then answer for any node Mr. X could move to.
+//If the map has a DistanceTable these are a few lookups. On a map too large for a table, one breadth first search runs
+//from all detectives at once: every node keeps a bitmask of the detectives that reached it, and a level only expands
+//the bits that are new at a node, so the search costs about as much as one search from a single node. Up to 64
+//detectives are searched together, more take one search per 64.
+//All arrays are kept from one decision to the next; the search marks what it wrote with an epoch instead of clearing
+//them, so a decision allocates nothing once the arrays have their size.
+final class DetectiveDistances {
+
+	private static final int SOURCES = Long.SIZE;		//detectives searched together, one bit each
+	private static final int NO_DETECTIVE = 200;		//shortest distance when there are no detectives, like the old BFS
+
+	private final IndexedGraph graph;
+	private final DistanceTable table;					//null if the map is too large, the distances are then searched
+	private final BitSet detectives;
+	private int[] locations = new int[8];
+	private int detectiveCount;
+
+	//search results per node value, valid where resultEpoch[node] == epoch
+	private int[] resultEpoch;
+	private int[] shortest;
+	private int[] sum;
+	private int[] reached;								//number of detectives that reached the node
+	private int epoch;
+
+	//state of one search per node value, valid where searchEpoch[node] == search
+	private int[] searchEpoch;
+	private long[] visited;								//detectives that reached the node
+	private long[] current;								//detectives to expand from the node in this level
+	private long[] next;								//detectives to expand from the node in the next level
+	private int[] ring;									//nodes to expand, this level then the next
+	private int search;
+
+	DetectiveDistances(IndexedGraph graph) {
+		this.graph = graph;
+		this.table = DistanceTable.supports(graph) ? DistanceTable.of(graph) : null;
+		this.detectives = new BitSet(graph.maxNode() + 1);
+		if (table != null) return;
+		int size = graph.maxNode() + 1;
+		resultEpoch = new int[size];
+		shortest = new int[size];
+		sum = new int[size];
+		reached = new int[size];
+		searchEpoch = new int[size];
+		visited = new long[size];
+		current = new long[size];
+		next = new long[size];
+		ring = new int[2 * size + 1];	//a node is at most once in each of the two levels
+	}
+
+	//reads the detectives' locations and, without a table, searches the distances from them
+	void prepare(ScotlandYardView view) {
+		List<Colour> players = view.getPlayers();
+		detectives.clear();
+		detectiveCount = players.size() - 1;
+		if (locations.length < detectiveCount) locations = new int[detectiveCount];
+		for (int i = 0; i < detectiveCount; i++) {
+			locations[i] = view.getPlayerLocation(players.get(i + 1)).get();
+			detectives.set(locations[i]);
+		}
+		if (table != null) return;
+
+		epoch++;
+		if (epoch == 0) { //wrapped, stamps from 2^32 decisions ago would look current
+			Arrays.fill(resultEpoch, 0);
+			epoch = 1;
+		}
+		for (int first = 0; first < detectiveCount; first += SOURCES)
+			search(first, Math.min(detectiveCount, first + SOURCES));
+	}
+
+	//level by level search from the detectives first to end - 1 at once
+	private void search(int first, int end) {
+		search++;
+		if (search == 0) {
+			Arrays.fill(searchEpoch, 0);
+			search = 1;
+		}
+		int head = 0;
+		int tail = 0;
+		for (int i = first; i < end; i++) {
+			int location = locations[i];
+			long bit = 1L << (i - first);
+			stamp(location);
+			visited[location] |= bit;
+			if (next[location] == 0) { //two detectives cannot share a node, but be safe
+				ring[tail] = location;
+				tail = (tail + 1) % ring.length;
+			}
+			next[location] |= bit;
+		}
+
+		for (int level = 0; head != tail; level++) {
+			int levelEnd = tail;
+			for (int i = head; i != levelEnd; i = (i + 1) % ring.length) {
+				int node = ring[i];
+				current[node] = next[node];
+				next[node] = 0;
+			}
+			while (head != levelEnd) {
+				int node = ring[head];
+				head = (head + 1) % ring.length;
+				long bits = current[node];
+				record(node, level, Long.bitCount(bits));
+				for (int neighbour : graph.neighbours(node)) {
+					stamp(neighbour);
+					long added = bits & ~visited[neighbour];
+					if (added == 0) continue;
+					visited[neighbour] |= added;
+					if (next[neighbour] == 0) {
+						ring[tail] = neighbour;
+						tail = (tail + 1) % ring.length;
+					}
+					next[neighbour] |= added;
+				}
+			}
+		}
+	}
+
+	//resets the node's search state if it is from an earlier search
+	private void stamp(int node) {
+		if (searchEpoch[node] == search) return;
+		searchEpoch[node] = search;
+		visited[node] = 0;
+		current[node] = 0;
+		next[node] = 0;
+	}
+
+	private void record(int node, int level, int count) {
+		if (resultEpoch[node] != epoch) {
+			resultEpoch[node] = epoch;
+			shortest[node] = level;
+			sum[node] = 0;
+			reached[node] = 0;
+		}
+		shortest[node] = Math.min(shortest[node], level);
+		sum[node] += level * count;
+		reached[node] += count;
+	}
+
+	//================================QUERIES===================================
+
+	int detectiveCount() {
+		return detectiveCount;
+	}
+
+	boolean hasDetective(int node) {
+		return node >= 0 && detectives.get(node);
+	}
+
+	//the distance from the node to the nearest detective
+	int shortest(int node) {
+		if (table == null) {
+			checkReached(node);
+			return detectiveCount == 0 ? NO_DETECTIVE : shortest[node];
+		}
+		int min = NO_DETECTIVE;
+		for (int i = 0; i < detectiveCount; i++)
+			min = Math.min(min, tableDistance(node, locations[i]));
+		return min;
+	}
+
+	//the sum of the distances from the node to every detective
+	int sum(int node) {
+		if (table == null) {
+			checkReached(node);
+			return detectiveCount == 0 ? 0 : sum[node];
+		}
+		int total = 0;
+		for (int i = 0; i < detectiveCount; i++)
+			total += tableDistance(node, locations[i]);
+		return total;
+	}
+
+	private int tableDistance(int node, int location) {
+		int distance = table.distance(node, location);
+		if (distance == DistanceTable.UNREACHABLE) throw new IllegalStateException("No other nodes left to search");
+		return distance;
+	}
+
+	private void checkReached(int node) {
+		if (detectiveCount > 0 && (resultEpoch[node] != epoch || reached[node] != detectiveCount))
+			throw new IllegalStateException("No other nodes left to search");
+	}
+}
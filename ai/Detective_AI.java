@@ -0,0 +1,257 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import uk.ac.bris.cs.scotlandyard.ai.ManagedAI;
+import uk.ac.bris.cs.scotlandyard.ai.PlayerFactory;
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+//Detective AI planning the moves of all detectives together. When the first detective of a rotation is asked for a
+//move, one search places every detective and the other detectives of the rotation just play their part of that plan.
+//A placement costs the expected distance from Mr. X to each detective, so they all close in on him, plus the expected
+//distance to the nearest detective, so they do not all come from the same side. Only chasing works better than only
+//covering, hence the CHASE weight.
+//Where Mr. X could be comes from a BeliefTracker registered through createSpectators(). A possible node is weighted by
+//how far it is from the detectives, since Mr. X runs away from them. Distances come from the DistanceTable of the map
+//with the detectives' transports, which is computed once per map.
+//The search improves one detective's destination at a time, keeping the others fixed, for a few passes. The distance
+//to the nearest other detective is kept per node, so trying a destination costs one pass over the possible nodes.
+@ManagedAI("Detective_AI")
+public class Detective_AI implements PlayerFactory {
+
+	private static final int PASSES = 2;					//rounds of improving each detective's destination
+	private static final int CHASE = 3;						//weight of a detective's own distance against the nearest
+	private static final Set<Transport> DETECTIVE_TRANSPORTS =
+			EnumSet.of(Transport.TAXI, Transport.BUS, Transport.UNDERGROUND);
+	private static final Ticket[] DETECTIVE_TICKETS = {Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND};
+
+	private Planner planner;		//plan of the current game
+
+	@Override
+	public Player createPlayer(Colour colour) {
+		if (colour == BLACK) throw new IllegalArgumentException("Detective_AI only plays detectives");
+		return new MyPlayer(this, colour);
+	}
+
+	//the tracker of the game's Mr. X, the players of the factory plan with it from now on
+	@Override
+	public synchronized List<Spectator> createSpectators(ScotlandYardView view) {
+		planner = new Planner(new BeliefTracker(view.getIndexedGraph()));
+		return Collections.singletonList(planner.belief);
+	}
+
+	//without createSpectators() the plan only knows Mr. X's last revealed location
+	private synchronized Planner planner(ScotlandYardView view) {
+		if (planner == null) planner = new Planner(new BeliefTracker(view.getIndexedGraph()));
+		return planner;
+	}
+
+	//MyPlayer plays one detective's part of the plan
+	private static class MyPlayer implements Player {
+
+		private final Detective_AI factory;
+		private final Colour colour;
+
+		MyPlayer(Detective_AI factory, Colour colour) {
+			this.factory = factory;
+			this.colour = colour;
+		}
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves, Consumer<Move> callback) {
+			callback.accept(factory.planner(view).move(view, colour, moves));
+		}
+	}
+
+	//================================JOINT PLAN===================================
+
+	//the plan of one game, shared by its detectives
+	private static final class Planner {
+
+		private final BeliefTracker belief;
+		private IndexedGraph graph;
+		private DistanceTable distances;		//null if the map is too large, the detectives then play any move
+		private int planRound = -1;				//round the plan was made for
+		private final int[] planned = new int[Colour.values().length];	//destination per colour ordinal
+
+		//scratch space of the search, grown as needed
+		private int[] targets = new int[0];		//nodes Mr. X could be at
+		private int[] weights = new int[0];
+		private int targetCount;
+		private int[] nearestOther = new int[0];	//per target: distance to the nearest detective but the one moved
+		private int[] locations = new int[0];		//per detective: current location
+		private int[] destinations = new int[0];	//per detective: planned destination
+		private int[][] options = new int[0][];		//per detective: destinations its tickets allow
+
+		Planner(BeliefTracker belief) {
+			this.belief = belief;
+		}
+
+		synchronized Move move(ScotlandYardView view, Colour colour, Set<Move> moves) {
+			IndexedGraph indexedGraph = view.getIndexedGraph();
+			if (!indexedGraph.sameMap(graph)) {
+				graph = indexedGraph;
+				distances = DistanceTable.supports(graph) ? DistanceTable.of(graph, DETECTIVE_TRANSPORTS) : null;
+			}
+			if (distances == null) return moves.iterator().next();
+			if (view.getCurrentRound() != planRound) {
+				plan(view);
+				planRound = view.getCurrentRound();
+			}
+
+			//the planned move, paying with the ticket the detective has most of; otherwise the best move on its own
+			Move best = null;
+			int bestTickets = -1;
+			long bestCost = Long.MAX_VALUE;
+			for (Move move : moves) {
+				if (!(move instanceof TicketMove)) continue;
+				TicketMove ticketMove = (TicketMove) move;
+				if (ticketMove.destination() == planned[colour.ordinal()]) {
+					int tickets = view.getPlayerTickets(colour, ticketMove.ticket()).orElse(0);
+					if (bestCost > 0 || tickets > bestTickets) {
+						best = move;
+						bestTickets = tickets;
+						bestCost = 0;
+					}
+				} else if (bestCost > 0) {
+					long cost = 1 + cost(ticketMove.destination(), null);
+					if (cost < bestCost) {
+						best = move;
+						bestCost = cost;
+					}
+				}
+			}
+			return best != null ? best : moves.iterator().next(); //a pass
+		}
+
+		//places every detective, see the class comment
+		private void plan(ScotlandYardView view) {
+			int detectives = view.getPlayers().size() - 1;
+			if (locations.length < detectives) {
+				locations = new int[detectives];
+				destinations = new int[detectives];
+				options = new int[detectives][];
+			}
+			List<Colour> players = view.getPlayers();
+			for (int i = 0; i < detectives; i++)
+				locations[i] = view.getPlayerLocation(players.get(i + 1)).orElse(0);
+			for (int i = 0; i < detectives; i++)
+				options[i] = options(view, players.get(i + 1), locations[i], detectives);
+			collectTargets(view, detectives);
+
+			//start from where the detectives are, then improve one destination at a time
+			System.arraycopy(locations, 0, destinations, 0, detectives);
+			for (int pass = 0; pass < PASSES; pass++) {
+				for (int i = 0; i < detectives; i++) {
+					if (options[i].length == 0) continue;
+					nearestOther(i, detectives);
+					int best = destinations[i];
+					long bestCost = Long.MAX_VALUE;
+					for (int option : options[i]) {
+						if (taken(option, i, detectives)) continue;
+						long cost = cost(option, nearestOther);
+						if (cost < bestCost) {
+							best = option;
+							bestCost = cost;
+						}
+					}
+					destinations[i] = best;
+				}
+			}
+
+			Arrays.fill(planned, 0);
+			for (int i = 0; i < detectives; i++)
+				planned[players.get(i + 1).ordinal()] = destinations[i];
+		}
+
+		//destinations the detective can afford, except nodes where a detective stands now
+		private int[] options(ScotlandYardView view, Colour colour, int location, int detectives) {
+			int[] result = new int[8];
+			int count = 0;
+			for (Ticket ticket : DETECTIVE_TICKETS) {
+				if (view.getPlayerTickets(colour, ticket).orElse(0) <= 0) continue;
+				for (int destination : graph.neighbours(location, ticket.transport())) {
+					if (occupied(destination, detectives) || contains(result, count, destination)) continue;
+					if (count == result.length) result = Arrays.copyOf(result, count * 2);
+					result[count++] = destination;
+				}
+			}
+			return Arrays.copyOf(result, count);
+		}
+
+		//the nodes Mr. X could be at, weighted by their distance from the nearest detective
+		private void collectTargets(ScotlandYardView view, int detectives) {
+			targetCount = 0;
+			int revealed = view.getPlayerLocation(BLACK).orElse(0);
+			if (belief.started()) {
+				for (int node = belief.next(0); node >= 0; node = belief.next(node + 1))
+					addTarget(node, detectives);
+			} else if (revealed > 0) {
+				addTarget(revealed, detectives);
+			} else {
+				for (int i = 0; i < graph.nodeCount(); i++)
+					if (!occupied(graph.node(i), detectives)) addTarget(graph.node(i), detectives);
+			}
+		}
+
+		private void addTarget(int node, int detectives) {
+			if (targetCount == targets.length) {
+				int size = Math.max(16, targetCount * 2);
+				targets = Arrays.copyOf(targets, size);
+				weights = Arrays.copyOf(weights, size);
+				nearestOther = Arrays.copyOf(nearestOther, size);
+			}
+			int nearest = DistanceTable.UNREACHABLE;
+			for (int i = 0; i < detectives; i++)
+				nearest = Math.min(nearest, distances.distance(locations[i], node));
+			targets[targetCount] = node;
+			weights[targetCount] = 1 + Math.min(nearest, graph.nodeCount());
+			targetCount++;
+		}
+
+		//distance from each target to the nearest planned destination of the other detectives
+		private void nearestOther(int moved, int detectives) {
+			for (int t = 0; t < targetCount; t++) {
+				int nearest = DistanceTable.UNREACHABLE;
+				for (int i = 0; i < detectives; i++)
+					if (i != moved) nearest = Math.min(nearest, distances.distance(destinations[i], targets[t]));
+				nearestOther[t] = nearest;
+			}
+		}
+
+		//cost of a detective at node (see the class comment) times the total weight;
+		//nearest == null counts that detective only
+		private long cost(int node, int[] nearest) {
+			long cost = 0;
+			for (int t = 0; t < targetCount; t++) {
+				int distance = distances.distance(node, targets[t]);
+				int closest = nearest == null ? distance : Math.min(distance, nearest[t]);
+				cost += (long) weights[t] * (CHASE * distance + closest);
+			}
+			return cost;
+		}
+
+		private boolean taken(int node, int moved, int detectives) {
+			for (int i = 0; i < detectives; i++)
+				if (i != moved && destinations[i] == node) return true;
+			return false;
+		}
+
+		private boolean occupied(int node, int detectives) {
+			return contains(locations, detectives, node);
+		}
+
+		private static boolean contains(int[] values, int count, int value) {
+			for (int i = 0; i < count; i++)
+				if (values[i] == value) return true;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import uk.ac.bris.cs.scotlandyard.ai.ManagedAI;
+import uk.ac.bris.cs.scotlandyard.ai.PlayerFactory;
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+//Mr. X player choosing his moves with Monte Carlo tree search (see MonteCarloSearch) instead of scoring one move ahead
+//like X_AI. Every decision runs until either the time budget or the iteration budget is used up, and the search tree
+//of a game is kept from one decision to the next.
+//A decision can be searched by several workers within the same budget, see MonteCarloSearch for the two ways they
+//split the work; the worker threads are shared by all players of the factory and stopped by finish().
+//The players of a factory also share a TranspositionTable of their decisions, so a position another game already
+//searched as hard is answered from it. A game therefore only replays the same with a new factory.
+@ManagedAI("MCTS_AI")
+public class MCTS_AI implements PlayerFactory {
+
+	public enum Parallelism {
+		ROOT,	//a tree per worker, added up at the end
+		TREE	//one tree grown by all workers
+	}
+
+	private final long budgetMillis;
+	private final long maxIterations;
+	private final int workers;
+	private final Parallelism parallelism;
+	private static final int DECISIONS = 1 << 16;	//decisions the table of a factory keeps
+
+	private final TranspositionTable table = new TranspositionTable(DECISIONS);
+	private ExecutorService executor;		//created with the first player that needs it
+
+	//one second per decision on every core
+	public MCTS_AI() {
+		this(1000, Long.MAX_VALUE, Runtime.getRuntime().availableProcessors(), Parallelism.TREE);
+	}
+
+	//budgetMillis => time per decision, maxIterations => iterations per decision, whichever runs out first
+	public MCTS_AI(long budgetMillis, long maxIterations) {
+		this(budgetMillis, maxIterations, 1, Parallelism.TREE);
+	}
+
+	//workers => threads searching each decision, including the one the player is asked on
+	public MCTS_AI(long budgetMillis, long maxIterations, int workers, Parallelism parallelism) {
+		if (budgetMillis <= 0 || maxIterations <= 0) throw new IllegalArgumentException("Empty budget");
+		if (workers < 1) throw new IllegalArgumentException("No workers");
+		if (parallelism == null) throw new NullPointerException("parallelism == null");
+		this.budgetMillis = budgetMillis;
+		this.maxIterations = maxIterations;
+		this.workers = workers;
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public Player createPlayer(Colour colour) {
+		if (colour.isDetective()) throw new IllegalArgumentException("MCTS_AI only plays Mr. X");
+		return new MyPlayer(new MonteCarloSearch(budgetMillis, maxIterations, workers,
+				parallelism == Parallelism.TREE, executor(), table));
+	}
+
+	@Override
+	public synchronized void finish() {
+		if (executor != null) executor.shutdownNow();
+		executor = null;
+	}
+
+	//daemon threads, so a factory that is never finished does not keep the JVM alive
+	private synchronized ExecutorService executor() {
+		if (workers == 1) return null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(workers - 1, runnable -> {
+				Thread thread = new Thread(runnable, "MCTS_AI worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	//MyPlayer keeps the search, and with it the tree, of one game
+	private static class MyPlayer implements Player {
+
+		private final MonteCarloSearch search;
+		private IndexedGraph indexedGraph;		//graph the generator was made for
+		private MoveGenerator generator;
+		private long decisions;					//seeds the search, so a game can be replayed
+
+		MyPlayer(MonteCarloSearch search) {
+			this.search = search;
+		}
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves, Consumer<Move> callback) {
+			IndexedGraph graph = view.getIndexedGraph();
+			if (!graph.sameMap(indexedGraph)) {
+				indexedGraph = graph;
+				generator = new MoveGenerator(graph);
+			}
+
+			GameState state = GameState.fromView(view, generator, location);
+			Move move = MonteCarloSearch.decode(search.search(state, decisions++), moves);
+			if (move == null) move = moves.iterator().next(); //cannot happen while the generator follows the model's rules
+			callback.accept(move);
+		}
+	}
+}
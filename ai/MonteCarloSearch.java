@@ -0,0 +1,627 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.DOUBLE_MOVE;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.TICKET_MOVE;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.finalDestination;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.firstDestination;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.firstTicket;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.kind;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.secondDestination;
+import static uk.ac.bris.cs.scotlandyard.model.MoveCodec.secondTicket;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.SECRET;
+
+//Monte Carlo tree search over Mr. X's moves, working on a GameState with the moves of the MoveGenerator.
+//The tree only has Mr. X's decisions ("open loop"): after each of his moves the detectives' replies are sampled from a
+//playout policy, since the detectives do not know where he is and a tree of their replies would let them play as if
+//they did. A child move can therefore be illegal in a sampled state, e.g. when a detective stands on its destination;
+//such children are skipped for that iteration.
+//Playouts are played to the end of the game with cheap heuristics: Mr. X mostly runs away from the nearest detective
+//and the detectives mostly head for his last revealed location (see DistanceTable), without double moves.
+//Mr. X winning counts 1, losing 0. The tree is kept between decisions, see reuse().
+//Different orders of Mr. X's moves can lead to the same position, e.g. a taxi then a bus or a bus then a taxi to the
+//same node, which the tree keeps as separate nodes. Their results are pooled in a ResultPool keyed by what the
+//playouts depend on besides the sampled detectives (see positionKey()), and a node's pooled mean counts as up to PRIOR
+//extra visits when it is selected, so a node starts out with what other paths, or earlier decisions, learnt about
+//its position. The node's own visits still carry the virtual losses of the shared tree.
+//Every decision is stored in a TranspositionTable under the GameState.hash() of its position, with Mr. X's win rate
+//of the chosen move and the move. A position that was already searched with at least this search's iterations, e.g.
+//by another game of the same MCTS_AI, is not searched again, see cached().
+//A search can run on several workers, each with its own copy of the position:
+// - shared tree: all workers grow one tree. A node counts a visit as soon as a worker passes it and the win only once
+//   the playout is over, so until then the other workers see a loss there ("virtual loss") and spread out instead of
+//   following each other down the same path. Statistics and children are updated with atomic operations, no locks.
+// - root parallel: every worker grows its own tree and the root statistics are added up at the end. No sharing
+//   during the search, but the trees are shallower.
+final class MonteCarloSearch {
+
+	private static final double EXPLORATION = 0.7;		//UCB1 exploration constant for rewards in [0, 1]
+	private static final double GREEDY = 0.8;			//chance that a playout move follows the heuristic
+	private static final double INSIGHT = 0.25;			//chance that a detective heads for Mr. X's actual location
+	private static final int PRIOR = 10;				//most visits a pooled mean counts as in selection
+	private static final int POOL_ENTRIES = 1 << 16;	//positions pooled, see ResultPool
+	private static final int TABLE_ENTRIES = 1 << 10;	//decisions stored by a search that has its own table
+	private static final int MAX_DEPTH = 0xFFFF;		//iterations a table entry can count
+
+	//moves are encoded by MoveCodec and read with its accessors; Mr. X is colour 0, so his pass is 0
+	static final long PASS = 0;
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final long budgetNanos;
+	private final long maxIterations;
+	private final int workers;
+	private final boolean sharedTree;
+	private final ExecutorService executor;		//runs all workers but the calling thread's, null for one worker
+	private final TranspositionTable table;		//decisions by the hash of their position, see cached()
+	private final TranspositionTable.Entry cached = new TranspositionTable.Entry();	//reused by probes
+	private final ResultPool pool = new ResultPool(POOL_ENTRIES);	//results by positionKey(), kept between decisions
+	private Node[] roots;			//the tree, or with root parallelism one tree per worker
+	private long rootMove = -1;		//move played from the roots in the last decision, -1 if none
+	private int rootRound;			//round the last decision was made in
+	private long iterations;		//iterations of the last decision, all workers together
+
+	//budgetMillis => time per decision, maxIterations => iterations per decision, whichever runs out first
+	MonteCarloSearch(long budgetMillis, long maxIterations) {
+		this(budgetMillis, maxIterations, 1, true, null, new TranspositionTable(TABLE_ENTRIES));
+	}
+
+	//workers => threads searching each decision, sharedTree => whether they grow one tree or one each,
+	//executor => runs the other workers while the calling thread runs the first; may be null for one worker,
+	//table => stores the decisions, may be shared by the searches of several games
+	MonteCarloSearch(long budgetMillis, long maxIterations, int workers, boolean sharedTree, ExecutorService executor,
+			TranspositionTable table) {
+		if (budgetMillis <= 0 || maxIterations <= 0) throw new IllegalArgumentException("Empty budget");
+		if (workers < 1) throw new IllegalArgumentException("No workers");
+		if (workers > 1 && executor == null) throw new NullPointerException("executor == null");
+		if (table == null) throw new NullPointerException("table == null");
+		this.budgetNanos = budgetMillis * 1_000_000;
+		this.maxIterations = maxIterations;
+		this.workers = workers;
+		this.sharedTree = sharedTree;
+		this.executor = executor;
+		this.table = table;
+	}
+
+	//a node is a position where Mr. X is to move; children are created the first time they are tried.
+	//Workers of a shared tree update it concurrently: visits and wins are packed into one long so a reader always
+	//sees a matching pair, and the moves are published once with their child slots
+	static final class Node {
+		private static final AtomicLongFieldUpdater<Node> STATS =
+				AtomicLongFieldUpdater.newUpdater(Node.class, "stats");
+		private static final AtomicReferenceFieldUpdater<Node, Edges> EDGES =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Edges.class, "edges");
+
+		final long key;				//positionKey() of the node's position
+		volatile long stats;		//visits (high 32 bits) | Mr. X's wins (low 32 bits)
+		volatile Edges edges;		//null until expanded
+
+		Node(long key) {
+			this.key = key;
+		}
+
+		int visits() {
+			return visits(stats);
+		}
+
+		void visit() {
+			STATS.addAndGet(this, 1L << 32);
+		}
+
+		void win() {
+			STATS.incrementAndGet(this);
+		}
+
+		static int visits(long stats) {
+			return (int) (stats >>> 32);
+		}
+
+		static int wins(long stats) {
+			return (int) stats;
+		}
+	}
+
+	//Mr. X's moves when a node was expanded, sorted, and the child per move, null until tried
+	static final class Edges {
+		final long[] moves;
+		final AtomicReferenceArray<Node> children;
+
+		Edges(long[] moves, AtomicReferenceArray<Node> children) {
+			this.moves = moves;
+			this.children = children;
+		}
+	}
+
+	//searches the position, which must have Mr. X to move, and returns the chosen move (see encode)
+	long search(GameState position, long seed) {
+		long deadline = System.nanoTime() + budgetNanos;
+		table.newSearch();
+		Worker[] team = new Worker[workers];
+		for (int i = 0; i < workers; i++) team[i] = new Worker(position.copy(), seed * 31 + i, pool);
+		if (cached(position, team[0])) {
+			roots = null;
+			rootMove = -1;
+			iterations = 0;
+			return cached.move;
+		}
+		Node[] trees = new Node[sharedTree ? 1 : workers];
+		for (int i = 0; i < trees.length; i++) {
+			trees[i] = reuse(i, position);
+			team[i].addMissing(trees[i]);
+		}
+		for (int i = 0; i < workers; i++) team[i].setRoot(trees[sharedTree ? 0 : i]);
+
+		AtomicLong started = new AtomicLong();
+		AtomicLong finished = new AtomicLong();
+		List<Future<?>> others = new ArrayList<>();
+		for (int i = 1; i < workers; i++) {
+			Worker worker = team[i];
+			others.add(executor.submit(() -> worker.run(started, finished, maxIterations, deadline)));
+		}
+		team[0].run(started, finished, maxIterations, deadline);
+		for (Future<?> other : others) {
+			try {
+				other.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Search interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+		iterations = finished.get();
+
+		long best = bestMove(trees, team[0]);
+		roots = trees;
+		rootMove = best;
+		rootRound = position.currentRound();
+		table.store(position.hash(), (int) Math.min(iterations, MAX_DEPTH), TranspositionTable.EXACT,
+				winRate(trees, best), best);
+		return best;
+	}
+
+	//whether the table has a decision for the position searched with at least as many iterations as this search may
+	//run, or as many as an entry counts, and its move is legal; fills in cached
+	private boolean cached(GameState position, Worker worker) {
+		return table.probe(position, cached) && cached.depth >= Math.min(maxIterations, MAX_DEPTH)
+				&& cached.bound == TranspositionTable.EXACT && worker.legal(cached.move);
+	}
+
+	//Mr. X's mean reward after the move, over all roots
+	private static float winRate(Node[] trees, long move) {
+		long visits = 0;
+		long wins = 0;
+		for (Node tree : trees) {
+			int index = Arrays.binarySearch(tree.edges.moves, move);
+			Node child = index < 0 ? null : tree.edges.children.get(index);
+			if (child == null) continue;
+			long stats = child.stats;
+			visits += Node.visits(stats);
+			wins += Node.wins(stats);
+		}
+		return visits == 0 ? 0 : (float) wins / visits;
+	}
+
+	//iterations run by the last search
+	long iterations() {
+		return iterations;
+	}
+
+	//decisions stored by position
+	TranspositionTable table() {
+		return table;
+	}
+
+	//results pooled by positionKey(), kept between decisions
+	ResultPool pool() {
+		return pool;
+	}
+
+	//the tree of the last search, the first one with root parallelism; null if the last decision was cached
+	Node root() {
+		return roots == null ? null : roots[0];
+	}
+
+	//key of what a playout from a position where Mr. X is to move depends on, besides where the detectives are:
+	//Mr. X's location and tickets, the round and where the detectives last saw him
+	static long positionKey(GameState state) {
+		long key = Zobrist.location(Colour.BLACK, state.locationAt(0)) ^ Zobrist.round(state.currentRound())
+				^ Zobrist.revealed(state.revealedLocation());
+		for (Ticket ticket : TICKETS)
+			key ^= Zobrist.tickets(Colour.BLACK, ticket, state.ticketsAt(0, ticket));
+		return key;
+	}
+
+	//keeps the subtree of the move played last time if the position follows from it, otherwise starts a new tree
+	private Node reuse(int tree, GameState position) {
+		if (roots != null && tree < roots.length && rootMove >= 0 && roots[tree].edges != null) {
+			Edges edges = roots[tree].edges;
+			int index = Arrays.binarySearch(edges.moves, rootMove);
+			Node child = index < 0 ? null : edges.children.get(index);
+			int rounds = kind(rootMove) == DOUBLE_MOVE ? 2 : 1;
+			if (child != null && position.currentRound() == rootRound + rounds
+					&& position.locationAt(0) == finalDestination(rootMove)) return child;
+		}
+		return new Node(positionKey(position));
+	}
+
+	//most visited legal child of the roots, ties are broken by the mean reward and then by the expansion heuristic.
+	//Every root has all legal moves (see Worker.addMissing), so the first root's moves are the candidates
+	private static long bestMove(Node[] trees, Worker worker) {
+		long[] moves = trees[0].edges.moves;
+		long[] visits = new long[moves.length];
+		long[] wins = new long[moves.length];
+		for (Node tree : trees) {
+			Edges edges = tree.edges;
+			for (int i = 0; i < edges.moves.length; i++) {
+				Node child = edges.children.get(i);
+				int index = child == null ? -1 : Arrays.binarySearch(moves, edges.moves[i]);
+				if (index < 0) continue;
+				long stats = child.stats;
+				visits[index] += Node.visits(stats);
+				wins[index] += Node.wins(stats);
+			}
+		}
+
+		int best = -1;
+		for (int i = 0; i < moves.length; i++) {
+			if (!worker.legal(moves[i])) continue;
+			if (best < 0 || compare(moves, visits, wins, i, best, worker) > 0) best = i;
+		}
+		return moves[best];
+	}
+
+	private static int compare(long[] moves, long[] visits, long[] wins, int first, int second, Worker worker) {
+		int byVisits = Long.compare(visits[first], visits[second]);
+		if (byVisits != 0) return byVisits;
+		if (visits[first] > 0) {
+			int mean = Double.compare((double) wins[first] / visits[first], (double) wins[second] / visits[second]);
+			if (mean != 0) return mean;
+		}
+		return Integer.compare(worker.untriedScore(moves[first]), worker.untriedScore(moves[second]));
+	}
+
+	//one search thread's state: its own copy of the position, random numbers and buffers
+	static final class Worker implements MoveSink {
+		private final GameState state;
+		private final IndexedGraph graph;
+		private final DistanceTable distances;		//null if the map is too large, playouts are then random
+		private final Random random;
+		private final ResultPool pool;
+		private long[] path = new long[64];			//moves applied since the root, to undo them
+		private int depth;
+		private Node root;							//node of the worker's position, its moves are checked once
+		private boolean[] rootLegal;
+		private Node[] nodes = new Node[32];		//tree nodes visited in this iteration
+		private long[] buffer = new long[256];		//moves generated for one position
+		private int count;
+
+		Worker(GameState state, long seed, ResultPool pool) {
+			this.state = state;
+			this.graph = state.graph();
+			this.distances = DistanceTable.supports(graph) ? DistanceTable.of(graph) : null;
+			this.random = new Random(seed);
+			this.pool = pool;
+		}
+
+		//iterates from the worker's root until the iterations or the time run out, started and finished count the
+		//iterations of all workers
+		void run(AtomicLong started, AtomicLong finished, long maxIterations, long deadline) {
+			while (started.getAndIncrement() < maxIterations) {
+				iterate(root);
+				finished.incrementAndGet();
+				if (System.nanoTime() >= deadline) break; //an iteration takes far longer than reading the clock
+			}
+		}
+
+		//selection, expansion, playout and backpropagation from node, which must be the worker's position.
+		//Visits are counted on the way down and wins after the playout, see the class comment
+		void iterate(Node root) {
+			Node node = root;
+			int visited = 0;
+			boolean won;
+			while (true) {
+				nodes = grow(nodes, visited);
+				nodes[visited++] = node;
+				node.visit();
+				if (state.isGameOver()) {
+					won = !state.detectivesWin();
+					break;
+				}
+				Edges edges = expand(node);
+				int choice = select(node, edges);
+				if (choice < 0) {				//no move of the tree is legal in this sample
+					won = playout();
+					break;
+				}
+				play(edges.moves[choice]);
+				replies();
+				Node child = edges.children.get(choice);
+				if (child == null) {
+					child = new Node(positionKey(state));
+					if (edges.children.compareAndSet(choice, null, child)) {
+						nodes = grow(nodes, visited);
+						nodes[visited++] = child;
+						child.visit();
+						won = playout();
+						break;
+					}
+					child = edges.children.get(choice); //another worker created it first, carry on down its node
+				}
+				node = child;
+			}
+			for (int i = 0; i < visited; i++) {
+				if (won) nodes[i].win();
+				pool.add(nodes[i].key, won);
+			}
+			while (depth > 0) undo(path[--depth]);
+		}
+
+		//moves are checked against the worker's position once instead of in every iteration
+		void setRoot(Node node) {
+			root = node;
+			long[] moves = node.edges.moves;
+			rootLegal = new boolean[moves.length];
+			for (int i = 0; i < rootLegal.length; i++)
+				rootLegal[i] = legal(moves[i]);
+		}
+
+		//the untried legal child furthest from the detectives, single moves before double moves so a short search
+		//does not waste double tickets; otherwise the legal child with the best UCB1 value; -1 if none is legal
+		private int select(Node node, Edges edges) {
+			long[] moves = edges.moves;
+			int untried = -1;
+			int untriedScore = Integer.MIN_VALUE;
+			int best = -1;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			double logVisits = Math.log(Math.max(1, node.visits()));
+			for (int i = 0; i < moves.length; i++) {
+				if (node == root ? !rootLegal[i] : !legal(moves[i])) continue;
+				Node child = edges.children.get(i);
+				if (child == null) {
+					int score = untriedScore(moves[i]);
+					if (score > untriedScore || (score == untriedScore && random.nextBoolean())) {
+						untried = i;
+						untriedScore = score;
+					}
+					continue;
+				}
+				long stats = child.stats;
+				double wins = Node.wins(stats);
+				int visits = Node.visits(stats);
+				long pooled = pool.stats(child.key); //what the position's other nodes learnt, as extra visits
+				int pooledVisits = Node.visits(pooled);
+				if (pooledVisits > 0) {
+					int prior = Math.min(PRIOR, pooledVisits);
+					wins += (double) Node.wins(pooled) / pooledVisits * prior;
+					visits += prior;
+				}
+				visits = Math.max(1, visits); //0 while the worker creating it has not counted it yet
+				double value = wins / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+				if (value > bestValue) {
+					bestValue = value;
+					best = i;
+				}
+			}
+			return untried >= 0 ? untried : best;
+		}
+
+		//distance from the move's destination to the nearest detective, double moves always score lower than single ones
+		int untriedScore(long move) {
+			int nearest = distances == null ? 0 : nearestDetective(finalDestination(move));
+			return kind(move) == DOUBLE_MOVE ? nearest - DistanceTable.UNREACHABLE - 1 : nearest;
+		}
+
+		private int nearestDetective(int location) {
+			int nearest = Integer.MAX_VALUE;
+			for (int player = 1; player < state.playerCount(); player++)
+				nearest = Math.min(nearest, distances.distance(state.locationAt(player), location));
+			return nearest;
+		}
+
+		//the node's moves, generating them in the worker's position if the node has none yet
+		private Edges expand(Node node) {
+			Edges edges = node.edges;
+			if (edges != null) return edges;
+			generate(true);
+			long[] moves = Arrays.copyOf(buffer, count);
+			Arrays.sort(moves);
+			edges = new Edges(moves, new AtomicReferenceArray<>(moves.length));
+			return Node.EDGES.compareAndSet(node, null, edges) ? edges : node.edges;
+		}
+
+		//adds Mr. X's moves that are legal now but were not when the node was expanded, e.g. in a reused tree.
+		//Only called before the workers start
+		void addMissing(Node node) {
+			if (node.edges == null) {
+				expand(node);
+				return;
+			}
+			generate(true);
+			long[] moves = node.edges.moves;
+			Node[] children = new Node[moves.length];
+			for (int i = 0; i < children.length; i++) children[i] = node.edges.children.get(i);
+			for (int i = 0; i < count; i++) {
+				if (Arrays.binarySearch(moves, buffer[i]) >= 0) continue;
+				int at = -(Arrays.binarySearch(moves, buffer[i]) + 1);
+				long[] grownMoves = new long[moves.length + 1];
+				Node[] grownChildren = new Node[moves.length + 1];
+				System.arraycopy(moves, 0, grownMoves, 0, at);
+				System.arraycopy(children, 0, grownChildren, 0, at);
+				grownMoves[at] = buffer[i];
+				System.arraycopy(moves, at, grownMoves, at + 1, moves.length - at);
+				System.arraycopy(children, at, grownChildren, at + 1, moves.length - at);
+				moves = grownMoves;
+				children = grownChildren;
+			}
+			node.edges = new Edges(moves, new AtomicReferenceArray<>(children));
+		}
+
+		//plays the detectives' moves until Mr. X is to move again or the game is over
+		private void replies() {
+			while (state.currentPlayer() != 0 && !state.isGameOver()) play(detectiveMove());
+		}
+
+		//plays the game to the end from the current position
+		private boolean playout() {
+			while (!state.isGameOver()) play(state.currentPlayer() == 0 ? mrXMove() : detectiveMove());
+			return !state.detectivesWin();
+		}
+
+		//mostly the single move keeping Mr. X furthest from the nearest detective
+		private long mrXMove() {
+			generate(false);
+			if (distances == null || random.nextDouble() >= GREEDY) return buffer[random.nextInt(count)];
+			long best = buffer[0];
+			int bestDistance = -1;
+			for (int i = 0; i < count; i++) {
+				int nearest = nearestDetective(finalDestination(buffer[i]));
+				if (nearest > bestDistance || (nearest == bestDistance && random.nextBoolean())) {
+					best = buffer[i];
+					bestDistance = nearest;
+				}
+			}
+			return best;
+		}
+
+		//mostly the move bringing the detective closest to where it believes Mr. X is
+		private long detectiveMove() {
+			generate(false);
+			if (count == 1 || distances == null || random.nextDouble() >= GREEDY) return buffer[random.nextInt(count)];
+			int target = state.revealedLocation();
+			if (random.nextDouble() < INSIGHT) target = state.locationAt(0);
+			else if (target == 0) return buffer[random.nextInt(count)]; //not revealed yet
+			long best = buffer[0];
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < count; i++) {
+				int distance = distances.distance(finalDestination(buffer[i]), target);
+				if (distance < bestDistance || (distance == bestDistance && random.nextBoolean())) {
+					best = buffer[i];
+					bestDistance = distance;
+				}
+			}
+			return best;
+		}
+
+		private void generate(boolean doubleMoves) {
+			count = 0;
+			state.generate(this, doubleMoves);
+		}
+
+		@Override
+		public void ticketMove(Colour colour, Ticket ticket, int destination) {
+			add(encodeTicket(ticket, destination));
+		}
+
+		@Override
+		public void doubleMove(Colour colour, Ticket first, int firstDestination, Ticket second,
+				int secondDestination) {
+			add(encodeDouble(first, firstDestination, second, secondDestination));
+		}
+
+		@Override
+		public void passMove(Colour colour) {
+			add(PASS);
+		}
+
+		private void add(long move) {
+			if (count == buffer.length) buffer = Arrays.copyOf(buffer, count * 2);
+			buffer[count++] = move;
+		}
+
+		private void play(long move) {
+			if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+			path[depth++] = move;
+			switch (kind(move)) {
+				case TICKET_MOVE:
+					state.playTicket(firstTicket(move), firstDestination(move));
+					break;
+				case DOUBLE_MOVE:
+					state.playDouble(firstTicket(move), firstDestination(move), secondTicket(move),
+							secondDestination(move));
+					break;
+				default:
+					state.playPass();
+			}
+		}
+
+		private void undo(long move) {
+			switch (kind(move)) {
+				case TICKET_MOVE:
+					state.undoTicket(firstTicket(move));
+					break;
+				case DOUBLE_MOVE:
+					state.undoDouble(firstTicket(move), secondTicket(move));
+					break;
+				default:
+					state.undoPass();
+			}
+		}
+
+		//whether Mr. X, who must be the current player, can play the move in the worker's position
+		boolean legal(long move) {
+			int location = state.locationAt(0);
+			Ticket first = firstTicket(move);
+			if (kind(move) == TICKET_MOVE)
+				return state.ticketsAt(0, first) > 0 && leg(location, first, firstDestination(move));
+
+			Ticket second = secondTicket(move);
+			int between = firstDestination(move);
+			if (state.ticketsAt(0, DOUBLE) <= 0 || state.roundCount() - state.currentRound() < 2) return false;
+			if (!leg(location, first, between) || !leg(between, second, secondDestination(move))) return false;
+			int have = state.ticketsAt(0, first);
+			if (first != second) return have > 0 && state.ticketsAt(0, second) > 0;
+			if (first != SECRET) return have >= 2;
+			//a ferry edge already costs a secret ticket, see MoveGenerator
+			return have >= 2 || (have == 1 && (graph.isEdge(location, between, Transport.FERRY)
+					|| graph.isEdge(between, secondDestination(move), Transport.FERRY)));
+		}
+
+		private boolean leg(int source, Ticket ticket, int destination) {
+			if (state.detectiveLocations().get(destination)) return false;
+			if (ticket != SECRET) return graph.isEdge(source, destination, ticket.transport());
+			for (int neighbour : graph.neighbours(source))
+				if (neighbour == destination) return true;
+			return false;
+		}
+
+		private static Node[] grow(Node[] nodes, int size) {
+			return size < nodes.length ? nodes : Arrays.copyOf(nodes, size * 2);
+		}
+	}
+
+	//================================MOVE ENCODING===================================
+
+	static long encodeTicket(Ticket ticket, int destination) {
+		return MoveCodec.encodeTicket(Colour.BLACK, ticket, destination);
+	}
+
+	static long encodeDouble(Ticket first, int firstDestination, Ticket second, int secondDestination) {
+		return MoveCodec.encodeDouble(Colour.BLACK, first, firstDestination, second, secondDestination);
+	}
+
+	static long encode(Move move) {
+		return MoveCodec.encode(move);
+	}
+
+	//the move of the set with the given encoding, null if there is none
+	static Move decode(long encoded, Set<Move> moves) {
+		for (Move move : moves)
+			if (encode(move) == encoded) return move;
+		return null;
+	}
+}
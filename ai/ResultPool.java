@@ -0,0 +1,48 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Playout results of MonteCarloSearch pooled by a key of Mr. X's side of a position (see MonteCarloSearch.positionKey),
+//so the tree nodes of transposed positions learn from each other. Unlike a TranspositionTable the key leaves out where
+//the detectives stand, since the search only samples them.
+//Bounded and lock-free: every key maps to one entry, and a different key there replaces it. An entry holds the visits
+//and wins packed like MonteCarloSearch.Node's statistics, with the key stored xored with them, so an entry torn by two
+//threads writing at once reads as missing. Two threads adding to the same entry at once can lose a result, which only
+//makes the pooled mean a little less accurate.
+final class ResultPool {
+
+	private static final int WORDS = 2;  //key ^ stats, stats
+
+	private final AtomicLongArray entries;
+	private final int mask;
+
+	//entries => maximum number of positions, rounded up to a power of two
+	ResultPool(int entries) {
+		if (entries < 1) throw new IllegalArgumentException("entries < 1");
+		int size = Integer.highestOneBit(entries);
+		if (size < entries) size <<= 1;
+		this.entries = new AtomicLongArray(size * WORDS);
+		this.mask = size - 1;
+	}
+
+	//adds a playout result for a position
+	void add(long key, boolean won) {
+		long stats = stats(key);
+		if (MonteCarloSearch.Node.visits(stats) == Integer.MAX_VALUE) return;
+		stats += (1L << 32) + (won ? 1 : 0);
+		int slot = slot(key);
+		entries.lazySet(slot + 1, stats);
+		entries.set(slot, key ^ stats);
+	}
+
+	//the visits (high 32 bits) and wins (low 32 bits) pooled for a position, 0 if there are none
+	long stats(long key) {
+		int slot = slot(key);
+		long stats = entries.get(slot + 1);
+		return (entries.get(slot) ^ stats) == key ? stats : 0;
+	}
+
+	private int slot(long key) {
+		return ((int) (key ^ (key >>> 32)) & mask) * WORDS;
+	}
+}
@@ -0,0 +1,344 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.ai.PlayerFactory;
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+//Plays many games between a Mr. X factory and a detective factory headlessly, spread over all cores.
+//Game i of a run uses seed firstSeed + i for the starting locations (see StandardGame.generateDetectiveLocations and
+//StandardGame.generateMrXLocation), so a run can be repeated exactly with deterministic players.
+//Every game is isolated: it gets its own model and new factories from the suppliers, whose players and spectators are
+//only used by that game, and the factories are finished when the game ends.
+//Games are driven move by move with ScotlandYardModel.advance(), so players must answer makeMove before returning from
+//it, like X_AI does; a game whose player does not is recorded as an error.
+public class Tournament {
+
+	private final Supplier<? extends PlayerFactory> mrX;
+	private final Supplier<? extends PlayerFactory> detectives;
+	private final int detectiveCount;
+	private final List<Boolean> rounds;
+	private final Graph<Integer, Transport> graph;
+	private final int threads;
+
+	private Tournament(Builder builder) {
+		this.mrX = builder.mrX;
+		this.detectives = builder.detectives;
+		this.detectiveCount = builder.detectiveCount;
+		this.rounds = builder.rounds;
+		this.graph = builder.graph;
+		this.threads = builder.threads;
+	}
+
+	//builder for a tournament, by default 5 detectives play the standard game on all cores
+	public static class Builder {
+		private final Supplier<? extends PlayerFactory> mrX;
+		private final Supplier<? extends PlayerFactory> detectives;
+		private int detectiveCount = 5;
+		private List<Boolean> rounds = StandardGame.ROUNDS;
+		private Graph<Integer, Transport> graph;
+		private int threads = Runtime.getRuntime().availableProcessors();
+
+		//mrX and detectives create new factories for every game
+		public Builder(Supplier<? extends PlayerFactory> mrX, Supplier<? extends PlayerFactory> detectives) {
+			this.mrX = Objects.requireNonNull(mrX);
+			this.detectives = Objects.requireNonNull(detectives);
+		}
+
+		public Builder detectives(int count) {
+			if (count < 1 || count > Colour.values().length - 1)
+				throw new IllegalArgumentException("Invalid detective count " + count);
+			this.detectiveCount = count;
+			return this;
+		}
+
+		public Builder rounds(List<Boolean> rounds) {
+			this.rounds = Objects.requireNonNull(rounds);
+			return this;
+		}
+
+		//the map, the standard map if not set
+		public Builder graph(Graph<Integer, Transport> graph) {
+			this.graph = Objects.requireNonNull(graph);
+			return this;
+		}
+
+		public Builder threads(int threads) {
+			if (threads < 1) throw new IllegalArgumentException("threads < 1");
+			this.threads = threads;
+			return this;
+		}
+
+		public Tournament build() throws IOException {
+			if (graph == null) graph = StandardGame.standardGraph();
+			return new Tournament(this);
+		}
+	}
+
+	//plays games with seeds firstSeed to firstSeed + games - 1 and reports the results in seed order
+	public Report run(int games, int firstSeed) throws InterruptedException {
+		if (games < 0) throw new IllegalArgumentException("games < 0");
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "tournament");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<GameResult>> futures = new ArrayList<>(games);
+			for (int i = 0; i < games; i++) {
+				int seed = firstSeed + i;
+				futures.add(executor.submit(() -> play(seed)));
+			}
+			List<GameResult> results = new ArrayList<>(games);
+			for (Future<GameResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Game runner failed", e.getCause()); //play() records game errors itself
+				}
+			}
+			return new Report(results, System.nanoTime() - start);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	//plays a single game
+	public GameResult play(int seed) {
+		PlayerFactory mrXFactory = mrX.get();
+		PlayerFactory detectiveFactory = detectives.get();
+		List<TimedPlayer> players = new ArrayList<>();
+		ScotlandYardModel game = null;
+		try {
+			List<Integer> locations = StandardGame.generateDetectiveLocations(seed, detectiveCount);
+			Colour[] colours = Colour.values();
+
+			TimedPlayer black = new TimedPlayer(mrXFactory.createPlayer(BLACK));
+			players.add(black);
+			PlayerConfiguration mrXConfiguration = new PlayerConfiguration.Builder(BLACK)
+					.using(black)
+					.with(StandardGame.generateMrXTickets())
+					.at(StandardGame.generateMrXLocation(seed))
+					.build();
+			PlayerConfiguration[] detectiveConfigurations = new PlayerConfiguration[detectiveCount];
+			for (int i = 0; i < detectiveCount; i++) {
+				TimedPlayer detective = new TimedPlayer(detectiveFactory.createPlayer(colours[i + 1]));
+				players.add(detective);
+				detectiveConfigurations[i] = new PlayerConfiguration.Builder(colours[i + 1])
+						.using(detective)
+						.with(StandardGame.generateDetectiveTickets())
+						.at(locations.get(i))
+						.build();
+			}
+
+			game = new ScotlandYardModel(rounds, graph, mrXConfiguration, detectiveConfigurations[0],
+					Arrays.copyOfRange(detectiveConfigurations, 1, detectiveCount));
+			List<Spectator> spectators = new ArrayList<>(mrXFactory.createSpectators(game));
+			if (detectiveFactory != mrXFactory) spectators.addAll(detectiveFactory.createSpectators(game));
+			for (Spectator spectator : spectators) game.registerSpectator(spectator);
+
+			while (!game.isGameOver())
+				game.advance();
+
+			Set<Colour> winners = game.getWinningPlayers();
+			return new GameResult(seed, winners.contains(BLACK) ? Side.MRX : Side.DETECTIVES,
+					game.getCurrentRound(), players, null);
+		} catch (RuntimeException e) {
+			return new GameResult(seed, null, game == null ? 0 : game.getCurrentRound(), players, e);
+		} finally {
+			mrXFactory.finish();
+			if (detectiveFactory != mrXFactory) detectiveFactory.finish();
+		}
+	}
+
+	public enum Side {MRX, DETECTIVES}
+
+	//measures how long a player takes to answer, i.e. until it calls back; the callback itself plays the move and asks
+	//the next players, so timing makeMove as a whole would include them
+	private static class TimedPlayer implements Player {
+		private final Player player;
+		private long[] latencies = new long[32];
+		private int count;
+
+		TimedPlayer(Player player) {
+			this.player = Objects.requireNonNull(player, "factory created a null player");
+		}
+
+		@Override
+		public void makeMove(ScotlandYardView view, int location, Set<Move> moves, Consumer<Move> callback) {
+			long start = System.nanoTime();
+			player.makeMove(view, location, moves, move -> {
+				record(System.nanoTime() - start);
+				callback.accept(move);
+			});
+		}
+
+		private void record(long nanos) {
+			if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+			latencies[count++] = nanos;
+		}
+
+		@Override
+		public String toString() {
+			return player.toString();
+		}
+	}
+
+	//outcome of one game
+	public static final class GameResult {
+		public final int seed;
+		public final Side winner;		//null if the game failed
+		public final int rounds;		//rounds played
+		public final int moves;			//moves made by all players
+		public final long[] mrXLatencies;		//decision times of Mr. X in nanoseconds
+		public final long[] detectiveLatencies;	//decision times of the detectives in nanoseconds
+		public final RuntimeException error;	//why the game failed, null if it did not
+
+		private GameResult(int seed, Side winner, int rounds, List<TimedPlayer> players, RuntimeException error) {
+			this.seed = seed;
+			this.winner = winner;
+			this.rounds = rounds;
+			this.error = error;
+			long[] mrX = new long[0];
+			List<long[]> detectives = new ArrayList<>();
+			for (int i = 0; i < players.size(); i++) {
+				TimedPlayer player = players.get(i);
+				long[] own = Arrays.copyOf(player.latencies, player.count);
+				if (i == 0) mrX = own;
+				else detectives.add(own);
+			}
+			this.mrXLatencies = mrX;
+			this.detectiveLatencies = flatten(detectives);
+			this.moves = mrX.length + detectiveLatencies.length;
+		}
+	}
+
+	//aggregated results of a run
+	public static final class Report {
+		public final List<GameResult> games;
+		public final long elapsedNanos;
+
+		private Report(List<GameResult> games, long elapsedNanos) {
+			this.games = games;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public int wins(Side side) {
+			int wins = 0;
+			for (GameResult game : games) if (game.winner == side) wins++;
+			return wins;
+		}
+
+		public int errors() {
+			return wins(null);
+		}
+
+		public double winRate(Side side) {
+			int finished = games.size() - errors();
+			return finished == 0 ? 0 : (double) wins(side) / finished;
+		}
+
+		public double gamesPerMinute() {
+			return elapsedNanos == 0 ? 0 : games.size() * 60e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("games: %d in %.1fs (%.0f per minute), errors: %d%n",
+					games.size(), elapsedNanos / 1e9, gamesPerMinute(), errors()));
+			sb.append(String.format("Mr. X wins: %d (%.1f%%), detective wins: %d (%.1f%%)%n",
+					wins(Side.MRX), winRate(Side.MRX) * 100, wins(Side.DETECTIVES), winRate(Side.DETECTIVES) * 100));
+
+			List<long[]> rounds = new ArrayList<>();
+			List<long[]> mrX = new ArrayList<>();
+			List<long[]> detectives = new ArrayList<>();
+			for (GameResult game : games) {
+				if (game.winner == null) continue;
+				rounds.add(new long[]{game.rounds});
+				mrX.add(game.mrXLatencies);
+				detectives.add(game.detectiveLatencies);
+			}
+			sb.append("rounds: ").append(summary(flatten(rounds), 1)).append(String.format("%n"));
+			sb.append("Mr. X decision ms: ").append(summary(flatten(mrX), 1e6)).append(String.format("%n"));
+			sb.append("detective decision ms: ").append(summary(flatten(detectives), 1e6)).append(String.format("%n"));
+
+			Map<Class<? extends RuntimeException>, Long> failures = new LinkedHashMap<>();
+			for (GameResult game : games)
+				if (game.error != null) failures.merge(game.error.getClass(), 1L, Long::sum);
+			failures.forEach((type, count) -> sb.append(String.format("error %s: %d%n", type.getSimpleName(), count)));
+			return sb.toString();
+		}
+
+		//mean and percentiles of the values divided by unit
+		private static String summary(long[] values, double unit) {
+			if (values.length == 0) return "none";
+			long[] sorted = values.clone();
+			Arrays.sort(sorted);
+			double sum = 0;
+			for (long value : sorted) sum += value;
+			return String.format("n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f", sorted.length,
+					sum / sorted.length / unit, percentile(sorted, 0.5) / unit, percentile(sorted, 0.9) / unit,
+					percentile(sorted, 0.99) / unit, sorted[sorted.length - 1] / unit);
+		}
+
+		private static double percentile(long[] sorted, double fraction) {
+			return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+		}
+	}
+
+	private static long[] flatten(List<long[]> arrays) {
+		int length = 0;
+		for (long[] array : arrays) length += array.length;
+		long[] joined = new long[length];
+		int offset = 0;
+		for (long[] array : arrays) {
+			System.arraycopy(array, 0, joined, offset, array.length);
+			offset += array.length;
+		}
+		return joined;
+	}
+
+	//usage: Tournament <Mr. X factory class> <detective factory class> [games] [first seed] [detectives]
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("usage: Tournament <Mr. X factory class> <detective factory class> [games] [first seed] [detectives]");
+			System.exit(2);
+		}
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int firstSeed = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+		int detectiveCount = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		Tournament tournament = new Builder(factory(args[0]), factory(args[1]))
+				.detectives(detectiveCount)
+				.build();
+		System.out.print(tournament.run(games, firstSeed));
+	}
+
+	private static Supplier<PlayerFactory> factory(String className) throws ClassNotFoundException {
+		Class<? extends PlayerFactory> type = Class.forName(className).asSubclass(PlayerFactory.class);
+		return () -> {
+			try {
+				return type.getConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		};
+	}
+}
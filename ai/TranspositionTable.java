@@ -0,0 +1,131 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import uk.ac.bris.cs.scotlandyard.model.GameState;
+
+//A bounded, lock-free cache of search results: an evaluation, its bound, the depth it was searched to and the best
+//move, keyed by the Zobrist hash of the whole position (see GameState.hash()). MonteCarloSearch stores its decisions
+//here, with the iterations as the depth.
+//Every bucket has two entries. A position already stored in either entry is updated in place; otherwise the first
+//entry is only replaced by results searched at least as deep, or by results of a newer search, and the second one is
+//always replaced. Entries are written without locks, and a torn entry written by two threads at once is detected
+//because the stored key is xored with the data, so a probe simply misses.
+//The same table can be kept by a player between makeMove calls, calling newSearch() once per decision.
+final class TranspositionTable {
+
+	//bound of the stored score
+	static final int EXACT = 0;
+	static final int LOWER = 1;
+	static final int UPPER = 2;
+
+	private static final int WORDS = 3;  //key ^ data ^ move, data, move
+	private static final int WAYS = 2;   //entries per bucket
+
+	private final AtomicLongArray table;
+	private final int bucketMask;
+	private volatile int generation;
+
+	//result of a probe, reused by the caller to avoid allocating
+	static final class Entry {
+		float score;
+		int depth;
+		int bound;
+		long move;  //encoded move chosen by the caller
+	}
+
+	//entries => maximum number of entries, rounded up to a power of two
+	TranspositionTable(int entries) {
+		if (entries < WAYS) throw new IllegalArgumentException("entries < " + WAYS);
+		int buckets = Integer.highestOneBit((entries + WAYS - 1) / WAYS); //number of buckets, a power of two
+		if (buckets * WAYS < entries) buckets <<= 1;
+		this.table = new AtomicLongArray(buckets * WAYS * WORDS);
+		this.bucketMask = buckets - 1;
+	}
+
+	//ages the stored entries, so results from previous decisions are replaced first
+	void newSearch() {
+		generation = (generation + 1) & 0xFF;
+	}
+
+	//stores a result for a position
+	void store(long key, int depth, int bound, float score, long move) {
+		int bucket = bucket(key);
+		long data = pack(score, depth, bound, generation);
+
+		//the entry of the same position, so a position never has two entries with different results
+		for (int way = 0; way < WAYS; way++) {
+			int slot = bucket + way * WORDS;
+			if (keyAt(slot) == key && table.get(slot + 1) != 0) {
+				write(slot, key, data, move);
+				return;
+			}
+		}
+
+		//first entry: replace if deeper or equal search, or from an older search
+		long first = table.get(bucket + 1);
+		if (depth >= depthOf(first) || generationOf(first) != generation || first == 0) {
+			write(bucket, key, data, move);
+		}
+		else write(bucket + WORDS, key, data, move); //second entry: always replace
+	}
+
+	//looks up a position, filling in the entry if found
+	boolean probe(long key, Entry into) {
+		int bucket = bucket(key);
+		for (int way = 0; way < WAYS; way++) {
+			int slot = bucket + way * WORDS;
+			long data = table.get(slot + 1);
+			long move = table.get(slot + 2);
+			if (data != 0 && (table.get(slot) ^ data ^ move) == key) {
+				into.score = Float.intBitsToFloat((int) (data >>> 32));
+				into.depth = depthOf(data);
+				into.bound = (int) (data >>> 8) & 0x3;
+				into.move = move;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//removes all entries
+	void clear() {
+		for (int i = 0; i < table.length(); i++) table.lazySet(i, 0);
+	}
+
+	//convenience for search over GameState
+	boolean probe(GameState state, Entry into) {
+		return probe(state.hash(), into);
+	}
+
+	private long keyAt(int slot) {
+		return table.get(slot) ^ table.get(slot + 1) ^ table.get(slot + 2);
+	}
+
+	private int bucket(long key) {
+		return ((int) (key ^ (key >>> 32)) & bucketMask) * WAYS * WORDS;
+	}
+
+	private void write(int slot, long key, long data, long move) {
+		table.lazySet(slot + 1, data);
+		table.lazySet(slot + 2, move);
+		table.set(slot, key ^ data ^ move);
+	}
+
+	//layout from the top: score (32) | depth (16) | marker (1), so data is never 0 | unused (5) | bound (2) | generation (8)
+	private static long pack(float score, int depth, int bound, int generation) {
+		return ((long) Float.floatToRawIntBits(score) << 32)
+				| ((long) (depth & 0xFFFF) << 16)
+				| (1L << 15)
+				| ((long) (bound & 0x3) << 8)
+				| (generation & 0xFF);
+	}
+
+	private static int depthOf(long data) {
+		return (int) (data >>> 16) & 0xFFFF;
+	}
+
+	private static int generationOf(long data) {
+		return (int) data & 0xFF;
+	}
+}
@@ -3,8 +3,6 @@ package uk.ac.bris.cs.scotlandyard.ui.ai;
 import java.util.*;
 import java.util.function.Consumer;
 
-import uk.ac.bris.cs.gamekit.graph.Edge;
-import uk.ac.bris.cs.gamekit.graph.Node;
 import uk.ac.bris.cs.scotlandyard.ai.ManagedAI;
 import uk.ac.bris.cs.scotlandyard.ai.PlayerFactory;
 import uk.ac.bris.cs.scotlandyard.model.*;
@@ -24,6 +22,9 @@ import static uk.ac.bris.cs.scotlandyard.model.Ticket.SECRET;
 @ManagedAI("X_AI")
 public class X_AI implements PlayerFactory {
 
+	private static final Ticket[] TICKETS = Ticket.values();			//values() copies the array on every call
+	private static final Transport[] TRANSPORTS = Transport.values();
+
 	// TODO create a new player here
 	@Override
 	public Player createPlayer(Colour colour) {
@@ -38,6 +39,20 @@ public class X_AI implements PlayerFactory {
 		private int futurePossibleLocation; 								//to keep track of the hypothetical future location
 		private List<Ticket> futurePossibleUsedTickets = new ArrayList<>(); //to keep track of the hypothetical future used tickets
 		private List<Integer> revealRounds = new ArrayList<>(); 			//list with indexes of reveal rounds <= for ticketStrategy()
+		private DetectiveDistances detectiveDistances;						//distances to the detectives, prepared once per decision <= for findDistance()
+		private IndexedGraph indexedGraph;									//graph detectiveDistances was made for
+		private final int[] mrXTickets = new int[TICKETS.length];	//Mr. X's tickets per ordinal, read once per decision
+		private final Distance initialDistances = new Distance(0, 0);		//reused, so scoring a move allocates nothing
+		private final Distance distances = new Distance(0, 0);
+
+		//Per decision cache of the values that only depend on where a move ends, as many moves end on the same node,
+		//e.g. dozens of double moves <= filled by evaluate()
+		//An entry is valid when its node's stamp is the current decision, so the arrays are never cleared
+		private int decision;
+		private int[] destinationStamp = new int[0];	//[node]
+		private int[] cachedShortest = new int[0];		//[node]
+		private int[] cachedSum = new int[0];			//[node]
+		private int[] cachedFreeEdges = new int[0];		//[node * TRANSPORTS.length + transport]: edges to nodes without a detective
 
 
 		//Player has makeMove() -> Called when the player is required to choose a move
@@ -51,8 +66,28 @@ public class X_AI implements PlayerFactory {
 			double maxScore = 0; 	//maximum score of all possible moves
 			Move bestMove; 			//final best move
 
+			//distances to the detectives are worked out once per decision, not once per move
+			IndexedGraph graph = view.getIndexedGraph();
+			if (!graph.sameMap(indexedGraph)) {
+				indexedGraph = graph;
+				detectiveDistances = new DetectiveDistances(graph);
+				int size = graph.maxNode() + 1;
+				destinationStamp = new int[size];
+				cachedShortest = new int[size];
+				cachedSum = new int[size];
+				cachedFreeEdges = new int[size * TRANSPORTS.length];
+			}
+			detectiveDistances.prepare(view);
+			decision++;
+			if (decision == 0) { //wrapped around, old stamps could look current
+				Arrays.fill(destinationStamp, 0);
+				decision = 1;
+			}
+			for (Ticket ticket : TICKETS)
+				mrXTickets[ticket.ordinal()] = view.getPlayerTickets(BLACK, ticket).get();
+
 			//initial distances between Mr. X and detectives before playing any hypothetical moves
-			Distance initialDistances = findDistance(view, location);
+			findDistance(initialDistances, location);
 
 			//===========================MAKE revealRounds list=================================//
 			List<Boolean> rounds = view.getRounds(); //the boolean list of hidden or reveal rounds
@@ -101,16 +136,15 @@ public class X_AI implements PlayerFactory {
 		private double scoringFunction(ScotlandYardView view, Distance initialDistances){
 
 			double score;					//Final Score
-			double numOfDetectives = view.getPlayers().size()-1;
+			double numOfDetectives = detectiveDistances.detectiveCount();
 			double availableMoves;			//available Mr.X moves from futurePossibleLocation
 			double wellConnectedLocation;   //number of Nodes connected to futurePossibleLocation
-			Distance distances;				//distances between Mr. X and detectives after playing a hypothetical move
 			double tickets = 0.8; 			//initial value for using plain tickets
 			//tickets =>works like a threshold to differentiate when use plain tickets and when use secret or double tickets
 
 			//-----------------------------------PARAMETER CALCULATION--------------------------------//
 			//Distance parameters => bigger odds for using this move when both min and average distances are bigger
-			distances = findDistance(view, futurePossibleLocation);
+			findDistance(distances, futurePossibleLocation); //distances between Mr. X and detectives after playing a hypothetical move
 			double weightedAverageDistance = distances.getSumOfDistances()/(numOfDetectives*7.0);
 			double weightedMinDistance;
 			if (distances.getShortestDistance()==1)	weightedMinDistance = 0; //nullify when detective is 1 hop away
@@ -158,163 +192,83 @@ public class X_AI implements PlayerFactory {
 		}
 
 
-		//returns whether any of the detectives are on a specific location <= used in findDistance()
-		private boolean detectiveOnLocation(ScotlandYardView view, int location){
-
-			List<Colour> players = view.getPlayers();
-			for (Colour player : players.subList(1,players.size()) ){
-
-				if (location == view.getPlayerLocation(player).get()){
-					return true;
-				}
-			}
-			return false;
-		}
-
-
-		//Returns a Distance object which contains the shortest distance between Mr. X and any of the detectives,
+		//Fills result with the shortest distance between Mr. X and any of the detectives,
 		//and the sum of all shortest distances between Mr. X and the detectives
-		//It finds the distance between Mr. X and every detective, using BFS to traverse through the graph and using
-		//an adapted version of Dijkstra's algorithm to find the distance
-		private Distance findDistance(ScotlandYardView view, int location_start){
-
-			//--------------------INITIALIZATIONS--------------------------//
-			List<Colour> players = view.getPlayers(); //all players
-			List<Node<Integer>> allNodes;			  //all nodes in graph
-			allNodes = view.getGraph().getNodes();
-
-
-			List<Integer> distances = new ArrayList<>(allNodes.size());     //stores the distance of every node in the graph from the start location node
-																		    //capacity the number of all nodes
-			List<Boolean> visitedNodes = new ArrayList<>(allNodes.size());  //keeps track of which node from the graph was visited at least once
-																			//capacity the number of all nodes
-			List<Integer> queue = new ArrayList<>();					    //contains the nodes from which we have to check the neighbouring nodes of
-
-			//set initial values to distances[] and visitedNodes[]
-			for (Node<Integer> node : allNodes){
+		//The distances come from detectiveDistances, which is prepared for the detectives once per decision
+		private void findDistance(Distance result, int location_start){
 
-				distances.add(200);				  //all distances with arbitrary value 200
-				visitedNodes.add(false); 		  //all nodes are unvisited
-			}
-			//---------------OVER_INITIALIZATIONS--------------------------//
-
-
-			queue.add(location_start); 					//start from start_location (location of Mr. X after using a specific move)
-			visitedNodes.set(location_start-1 , true);	//start_location now is visited
-			distances.set(location_start-1 , 0);		//Start and finish nodes are the same, hence 0
-
-			int current_search_node;
-			int detectivesLocationsFound = 0; //number of detectives from which we have found their shortest distance to Mr. X
-			int sumDistances = 0;			  //sum of shortest distances of all detectives
-			int minDistance = 200;			  //minimum shortest distance between all detectives
+			evaluate(location_start);
+			result.set(cachedShortest[location_start], cachedSum[location_start]);
+		}
 
-			while (!queue.isEmpty()){ //when the queue is empty, there aren't any nodes left (that we haven't visited)
 
-				current_search_node = queue.get(0); //take the first element in the queue as current search node
-				queue.remove(0);				//and remove it
+		//with how many nodes is the future possible location connected  <= used by scoringFunction()
+		private int wellConnectedLocation (ScotlandYardView view){
 
-				//All edges around the current Search Node
-				Collection<Edge<Integer, Transport>> edges = view.getGraph().getEdgesFrom(view.getGraph().getNode(current_search_node));
+			//the indexed graph keeps the distinct neighbouring nodes, multiple edges go to the same node
+			return indexedGraph.neighbours(futurePossibleLocation).length;
+		}
 
-				//visit every neighbouring node of current search node
-				for (Edge<Integer,Transport> edge : edges){
 
-					if (!visitedNodes.get( edge.destination().value()-1 )){ //if neighbour node not visited
+		//number of available moves for Mr. X if he goes to future Possible Location and uses specific ticket <= used by scoringFunction()
+		//Whether Mr. X can take an edge only depends on its transport, so the free edges per transport are counted once
+		//per destination (see evaluate()) and only the tickets are checked per move
+		private double availableMoves (ScotlandYardView view){
 
-						visitedNodes.set( edge.destination().value()-1, true); //set it to visited
+			evaluate(futurePossibleLocation);
+			int possibleMoves = 0;
 
-						//set distance of neighbour node to the distance of search node incremented by 1
-						distances.set( edge.destination().value()-1,  distances.get(current_search_node-1) +1 );
-						queue.add(edge.destination().value()); //add this neighbour node to queue, so as to check its own neighbour nodes in the future
+			for (Transport transport : TRANSPORTS){
 
-						//Stop calculating distances and traversing through the graph
-						//when all the detectives' shortest distances are found
-						if (detectiveOnLocation(view, edge.destination().value())){ //if a detective is on this neighbour node -> his shortest distance from Mr. X is found
+				int freeEdges = cachedFreeEdges[futurePossibleLocation * TRANSPORTS.length + transport.ordinal()];
+				if (freeEdges == 0) continue;
 
-							sumDistances += distances.get( edge.destination().value()-1); 	//update sum of shortest distances from detectives
-							if (distances.get( edge.destination().value()-1) < minDistance) //update minimum shortest distance
-								minDistance = distances.get( edge.destination().value()-1);
+				//NORMAL TICKET_MOVE
+				//check that Mr. X has enough tickets for these moves, taking into account the tickets used for the future possible move
+				if (mrXTickets[fromTransport(transport).ordinal()] > usedTickets(fromTransport(transport))) {
+					possibleMoves += freeEdges;
+				}
 
-							detectivesLocationsFound +=1;
-							if (detectivesLocationsFound == players.size()-1){ //STOP and return, if all detective distances found
-								return new Distance(minDistance, sumDistances);
-							}
-						}
-					}
+				//SECRET TICKET_MOVE
+				//if not, check if he has enough secret tickets, if yes he can do these ticketMoves using secret tickets
+				else if (mrXTickets[SECRET.ordinal()] > usedTickets(SECRET)){
+					possibleMoves += freeEdges;
 				}
 			}
-			throw new IllegalStateException("No other nodes left to search");
+			return possibleMoves;
 		}
 
 
+		//how many of the ticket the future possible move uses
+		private int usedTickets(Ticket ticket){
 
-		//with how many nodes is the future possible location connected  <= used by scoringFunction()
-		private int wellConnectedLocation (ScotlandYardView view){
-
-			Collection<Edge<Integer, Transport>> edges = view.getGraph().getEdgesFrom(view.getGraph().getNode(futurePossibleLocation));
-			List<Integer> neighbourNodes = new ArrayList<>();
-
-			//create list neighbourNodes[] with locations of neighbouring nodes
-			for (Edge<Integer, Transport> edge : edges){
-
-				int nodeLoc = edge.destination().value();
-				if (!neighbourNodes.contains(nodeLoc)) //multiple edges go to the same node
-					neighbourNodes.add (nodeLoc);
+			int used = 0;
+			for (int i = 0; i < futurePossibleUsedTickets.size(); i++){
+				if (futurePossibleUsedTickets.get(i) == ticket)
+					used+=1;
 			}
-			return neighbourNodes.size();
+			return used;
 		}
 
 
-		//number of available moves for Mr. X if he goes to future Possible Location and uses specific ticket <= used by scoringFunction()
-		private double availableMoves (ScotlandYardView view){
+		//works out the values that only depend on the destination, the first time a move of this decision ends on it
+		private void evaluate(int location){
 
-			int possibleMoves = 0;
-			int temp;
-
-			//collection of edges around the possible future location
-			Collection<Edge<Integer, Transport>> edges = view.getGraph().getEdgesFrom(view.getGraph().getNode(futurePossibleLocation));
-
-			//check every edge to check if it's a possible move for Mr. X
-			for (Edge<Integer, Transport> edge : edges){
-
-				temp = 0;
-
-				//check that no detective is on that destination i.e. location is free to be on
-				if ( !detectiveOnLocation(view, edge.destination().value()) ){
-
-					//NORMAL TICKET_MOVE
-					//take into account the normal tickets used for the future possible move
-					for (Ticket ticket: futurePossibleUsedTickets){
-						if (ticket.equals( fromTransport(edge.data()) ))
-							temp+=1;
-					}
-
-					//check that Mr. X has enough tickets for that specific move
-					if ( view.getPlayerTickets(BLACK, fromTransport(edge.data())).get() > temp) {
-						possibleMoves+=1;
-					}
-					//
-
-					//SECRET TICKET_MOVE
-					//if not, check if he has a secret ticket, if yes he can do that ticketMove using secret ticket
-					else {
-
-						//take into account the secret tickets used for the future possible move
-						temp = 0;
-						for (Ticket ticket: futurePossibleUsedTickets){
-							if (ticket.equals( SECRET))
-								temp+=1;
-						}
-
-						//check that Mr. X has enough secret tickets for that specific move
-						if (view.getPlayerTickets(BLACK, SECRET).get() > temp){
-							possibleMoves+=1;
-						}
-					}
-					//
+			if (destinationStamp[location] == decision) return;
+			destinationStamp[location] = decision;
+
+			cachedShortest[location] = detectiveDistances.shortest(location);
+			cachedSum[location] = detectiveDistances.sum(location);
+
+			//edges of every transport to nodes that no detective is on i.e. location is free to be on
+			for (Transport transport : TRANSPORTS){
+				int freeEdges = 0;
+				for (int destination : indexedGraph.neighbours(location, transport)){
+					if (!detectiveDistances.hasDetective(destination))
+						freeEdges+=1;
 				}
+				cachedFreeEdges[location * TRANSPORTS.length + transport.ordinal()] = freeEdges;
 			}
-			return possibleMoves;
 		}
 
 
@@ -449,7 +403,7 @@ public class X_AI implements PlayerFactory {
 			double secretYesValue; //final value of how suitable is to play a secret ticket
 
 			//Distance parameters => bigger odds for using this move when both min and average distances are bigger
-			double weightedAverageDistance = distances.getSumOfDistances()/((view.getPlayers().size()-1)*7.0);
+			double weightedAverageDistance = distances.getSumOfDistances()/(detectiveDistances.detectiveCount()*7.0);
 			double weightedMinDistance;
 			if (distances.getShortestDistance()==1) weightedMinDistance = 0; //nullify is detective is 1 hop away
 			else weightedMinDistance = distances.getShortestDistance()/7.0;
@@ -473,7 +427,7 @@ public class X_AI implements PlayerFactory {
 			double doubleYesValue; //final value of how suitable is to play a double ticket
 
 			//Distance parameters => bigger odds for using this move when both min and average distances are bigger
-			double weightedAverageDistance = distances.getSumOfDistances()/((view.getPlayers().size()-1)*7.0);
+			double weightedAverageDistance = distances.getSumOfDistances()/(detectiveDistances.detectiveCount()*7.0);
 			double weightedMinDistance;
 			if (distances.getShortestDistance()==1) weightedMinDistance = 0; //nullify if it's 1 hop away
 			else weightedMinDistance = distances.getShortestDistance()/7.0;
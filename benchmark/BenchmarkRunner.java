@@ -0,0 +1,29 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package with the GC profiler. The arguments
+ * are JMH's usual command line options, e.g. a regular expression selecting
+ * some of the benchmarks or {@code -f 3} for more forks; without a regular
+ * expression all benchmarks run.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class);
+		if (commandLine.getIncludes().isEmpty())
+			options.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,72 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardModel;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * {@link ScotlandYardModel#isGameOver()} and
+ * {@link ScotlandYardModel#getWinningPlayers()} of a game in progress, as
+ * called by every player and spectator, and of a finished game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameOverBenchmark {
+
+	private ScotlandYardModel midGame;
+	private ScotlandYardModel finishedGame;
+
+	@Setup
+	public void setUp() throws IOException {
+		Graph<Integer, Transport> graph = Positions.standardGraph();
+		midGame = Positions.midGame(graph, 1, 8).game;
+
+		Random random = new Random(1);
+		finishedGame = Positions.game(graph, 1, Positions.randomPlayer(random),
+				Positions.randomPlayer(random));
+		while (!finishedGame.isGameOver())
+			finishedGame.advance();
+	}
+
+	@Benchmark
+	public boolean isGameOver() {
+		return midGame.isGameOver();
+	}
+
+	@Benchmark
+	public boolean isGameOverFinished() {
+		return finishedGame.isGameOver();
+	}
+
+	@Benchmark
+	public Set<Colour> getWinningPlayers() {
+		return midGame.getWinningPlayers();
+	}
+
+	@Benchmark
+	public Set<Colour> getWinningPlayersFinished() {
+		return finishedGame.getWinningPlayers();
+	}
+
+}
@@ -0,0 +1,46 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGraphReader;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * {@link ScotlandYardGraphReader#fromLines(List)} on the standard map,
+ * graph.txt, which every game reads at least once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphReaderBenchmark {
+
+	private List<String> lines;
+
+	@Setup
+	public void setUp() throws IOException {
+		lines = Positions.standardLines();
+	}
+
+	@Benchmark
+	public ImmutableGraph<Integer, Transport> fromLines() {
+		return ScotlandYardGraphReader.fromLines(lines);
+	}
+
+}
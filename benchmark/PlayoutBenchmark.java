@@ -0,0 +1,58 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardModel;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * Whole games of the model with random players, from creating the game to
+ * its end, in games per second. Each game starts from the next seed, so the
+ * result is an average over many different games.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayoutBenchmark {
+
+	private Graph<Integer, Transport> graph;
+	private Random random;
+	private Player player;
+	private int seed;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = Positions.standardGraph();
+		random = new Random(1);
+		player = Positions.randomPlayer(random);
+	}
+
+	@Benchmark
+	public Set<Colour> randomGame() {
+		ScotlandYardModel game = Positions.game(graph, seed++, player, player);
+		while (!game.isGameOver())
+			game.advance();
+		return game.getWinningPlayers();
+	}
+
+}
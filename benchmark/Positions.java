@@ -0,0 +1,146 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.PlayerConfiguration;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardGraphReader;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardModel;
+import uk.ac.bris.cs.scotlandyard.model.StandardGame;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * Games and positions shared by the benchmarks. Every game is the standard
+ * game with five detectives, and positions are reached by random play from
+ * a seed, so a benchmark measures the same positions in every run.
+ */
+final class Positions {
+
+	static final int DETECTIVES = 5;
+
+	private Positions() {}
+
+	/**
+	 * A game waiting for Mr. X to choose a move
+	 */
+	static final class Position {
+		final ScotlandYardModel game;
+		final int location;
+		final Set<Move> moves;
+
+		Position(ScotlandYardModel game, int location, Set<Move> moves) {
+			this.game = game;
+			this.location = location;
+			this.moves = moves;
+		}
+	}
+
+	/**
+	 * @return the lines of the standard map, graph.txt
+	 * @throws IOException if the map cannot be read
+	 */
+	static List<String> standardLines() throws IOException {
+		InputStream stream = Positions.class.getClassLoader().getResourceAsStream("graph.txt");
+		if (stream == null) throw new IOException("Resource graph.txt not found");
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+			return reader.lines().collect(toList());
+		}
+	}
+
+	/**
+	 * @return the standard map
+	 * @throws IOException if the map cannot be read
+	 */
+	static Graph<Integer, Transport> standardGraph() throws IOException {
+		return ScotlandYardGraphReader.fromLines(standardLines());
+	}
+
+	/**
+	 * A player choosing uniformly among its valid moves
+	 *
+	 * @param random the source of the choices; not null
+	 * @return the player; never null
+	 */
+	static Player randomPlayer(Random random) {
+		return (view, location, moves, callback) -> {
+			Iterator<Move> iterator = moves.iterator();
+			for (int skip = random.nextInt(moves.size()); skip > 0; skip--)
+				iterator.next();
+			callback.accept(iterator.next());
+		};
+	}
+
+	/**
+	 * Creates a standard game from a seed
+	 *
+	 * @param graph the map; not null
+	 * @param seed the seed of the starting locations
+	 * @param mrX Mr. X's player; not null
+	 * @param detectives the detectives' player; not null
+	 * @return the game, not started; never null
+	 */
+	static ScotlandYardModel game(Graph<Integer, Transport> graph, int seed, Player mrX,
+			Player detectives) {
+		List<Integer> locations = StandardGame.generateDetectiveLocations(seed, DETECTIVES);
+		PlayerConfiguration mrXConfiguration = new PlayerConfiguration.Builder(Colour.BLACK)
+				.using(mrX)
+				.with(StandardGame.generateMrXTickets())
+				.at(StandardGame.generateMrXLocation(seed))
+				.build();
+		PlayerConfiguration[] detectiveConfigurations = new PlayerConfiguration[DETECTIVES];
+		for (int i = 0; i < DETECTIVES; i++)
+			detectiveConfigurations[i] = new PlayerConfiguration.Builder(Colour.values()[i + 1])
+					.using(detectives)
+					.with(StandardGame.generateDetectiveTickets())
+					.at(locations.get(i))
+					.build();
+		return new ScotlandYardModel(StandardGame.ROUNDS, graph, mrXConfiguration,
+				detectiveConfigurations[0],
+				Arrays.copyOfRange(detectiveConfigurations, 1, DETECTIVES));
+	}
+
+	/**
+	 * Plays a game randomly until Mr. X is to move in the given round. Seeds
+	 * after the given one are tried until a game lasts that long.
+	 *
+	 * @param graph the map; not null
+	 * @param seed the first seed to try
+	 * @param round the round of the position, at least 0 and less than the
+	 *        number of rounds
+	 * @return the position; never null
+	 */
+	static Position midGame(Graph<Integer, Transport> graph, int seed, int round) {
+		for (int attempt = seed; ; attempt++) {
+			Random random = new Random(attempt);
+			Player randomPlayer = randomPlayer(random);
+			Position[] position = new Position[1];
+			ScotlandYardModel[] game = new ScotlandYardModel[1];
+			Player mrX = (view, location, moves, callback) -> {
+				//stop without answering, so the game waits for this move
+				if (view.getCurrentRound() >= round)
+					position[0] = new Position(game[0], location, moves);
+				else randomPlayer.makeMove(view, location, moves, callback);
+			};
+			game[0] = game(graph, attempt, mrX, randomPlayer);
+			while (position[0] == null && !game[0].isGameOver())
+				game[0].startRotate();
+			if (position[0] != null) return position[0];
+		}
+	}
+
+}
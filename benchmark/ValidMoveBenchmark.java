@@ -0,0 +1,99 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.scotlandyard.benchmark.Positions.Position;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveGenerator;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardModel;
+import uk.ac.bris.cs.scotlandyard.model.StandardGame;
+import uk.ac.bris.cs.scotlandyard.model.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * The move generation behind {@code ScotlandYardModel.validMove}, which the
+ * model runs for every move it asks a player for:
+ * {@link MoveGenerator#validMoves} with the player's tickets and the
+ * detectives' locations of a mid-game position, for a detective and for
+ * Mr. X without special tickets, with secret tickets and with secret and
+ * double tickets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidMoveBenchmark {
+
+	private static final int ROUND = 8;
+
+	/**
+	 * The tickets the moves are generated for
+	 */
+	public enum Tickets {
+		DETECTIVE, MRX, MRX_SECRET, MRX_SECRET_DOUBLE
+	}
+
+	@Param
+	public Tickets tickets;
+
+	private MoveGenerator generator;
+	private Colour colour;
+	private int location;
+	private final int[] ticketCounts = new int[MoveGenerator.TICKET_SLOTS];
+	private final BitSet detectives = new BitSet();
+	private int roundsRemaining;
+
+	@Setup
+	public void setUp() throws IOException {
+		Graph<Integer, Transport> graph = Positions.standardGraph();
+		generator = new MoveGenerator(graph);
+		Position position = Positions.midGame(graph, 1, ROUND);
+		ScotlandYardModel midGame = position.game;
+		for (Colour detective : midGame.getPlayers().subList(1, midGame.getPlayers().size()))
+			detectives.set(midGame.getPlayerLocation(detective).get());
+		roundsRemaining = midGame.getRounds().size() - midGame.getCurrentRound();
+
+		Map<Ticket, Integer> counts = new EnumMap<>(Ticket.class);
+		if (tickets == Tickets.DETECTIVE) {
+			colour = midGame.getPlayers().get(1);
+			location = midGame.getPlayerLocation(colour).get();
+			detectives.clear(location);
+			counts.putAll(StandardGame.generateDetectiveTickets());
+		} else {
+			colour = Colour.BLACK;
+			location = position.location;
+			counts.putAll(StandardGame.generateMrXTickets());
+			if (tickets == Tickets.MRX) counts.put(Ticket.SECRET, 0);
+			if (tickets != Tickets.MRX_SECRET_DOUBLE) counts.put(Ticket.DOUBLE, 0);
+		}
+		MoveGenerator.ticketCounts(counts, ticketCounts, 0);
+
+	}
+
+	@Benchmark
+	public Set<Move> validMove() {
+		return generator.validMoves(colour, location, ticketCounts, 0, detectives, roundsRemaining);
+	}
+
+}
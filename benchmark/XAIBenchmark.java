@@ -0,0 +1,54 @@
+package uk.ac.bris.cs.scotlandyard.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.bris.cs.scotlandyard.benchmark.Positions.Position;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.ui.ai.X_AI;
+
+/**
+ * One decision of {@link X_AI}'s player at positions of a randomly played
+ * game: the opening, where Mr. X has all his double and secret tickets, and
+ * rounds shortly before and after reveal rounds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XAIBenchmark {
+
+	@Param({ "0", "4", "8", "12", "17" })
+	public int round;
+
+	private Position position;
+	private Player player;
+
+	@Setup
+	public void setUp() throws IOException {
+		position = Positions.midGame(Positions.standardGraph(), 1, round);
+		player = new X_AI().createPlayer(Colour.BLACK);
+	}
+
+	@Benchmark
+	public void makeMove(Blackhole blackhole) {
+		player.makeMove(position.game, position.location, position.moves, blackhole::consume);
+	}
+
+}
@@ -0,0 +1,13 @@
+/**
+ * JMH benchmarks of the model and the AIs
+ *
+ * <br>
+ * The benchmarks are compiled with the JMH annotation processor
+ * ({@code org.openjdk.jmh:jmh-generator-annprocess}) and need
+ * {@code jmh-core} and the {@code graph.txt} resource of the model on the
+ * classpath. {@link uk.ac.bris.cs.scotlandyard.benchmark.BenchmarkRunner}
+ * runs them with the GC profiler, so every result comes with its allocation
+ * rate; {@code gc.alloc.rate.norm} is the number of bytes allocated per
+ * operation and is the figure to compare between versions.
+ */
+package uk.ac.bris.cs.scotlandyard.benchmark;
@@ -0,0 +1,15 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+/**
+ * JMX view of a {@link LongCounter}
+ */
+public interface CounterMXBean {
+
+	long getCount();
+
+	/**
+	 * @return the count divided by the seconds since the counter was created
+	 */
+	double getRatePerSecond();
+
+}
@@ -0,0 +1,25 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+/**
+ * JMX view of a {@link LogLinearHistogram}. Percentiles are accurate to
+ * about 3% of the value.
+ */
+public interface HistogramMXBean {
+
+	long getCount();
+
+	long getMin();
+
+	long getMax();
+
+	double getMean();
+
+	long getP50();
+
+	long getP90();
+
+	long getP99();
+
+	long getP999();
+
+}
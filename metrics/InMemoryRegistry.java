@@ -0,0 +1,123 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry keeping its instruments in memory: histograms are
+ * {@link LogLinearHistogram}s and counters are {@link LongCounter}s.
+ *
+ * <br>
+ * After {@link #export(MBeanServer, String)} every instrument, including the
+ * ones created later, is an MXBean named
+ * {@code <domain>:type=Histogram,name="<name>"} or
+ * {@code <domain>:type=Counter,name="<name>"}, so the numbers can be watched
+ * in JConsole or VisualVM while games are played.
+ */
+public class InMemoryRegistry implements MetricsRegistry {
+
+	private final ConcurrentMap<String, LogLinearHistogram> histograms = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongCounter> counters = new ConcurrentHashMap<>();
+	private MBeanServer server;		//null until exported
+	private String domain;
+
+	@Override
+	public LogLinearHistogram histogram(String name) {
+		Objects.requireNonNull(name);
+		LogLinearHistogram histogram = histograms.get(name);
+		if (histogram != null) return histogram;
+		LogLinearHistogram created = new LogLinearHistogram();
+		histogram = histograms.putIfAbsent(name, created);
+		if (histogram != null) return histogram;
+		register("Histogram", name, created);
+		return created;
+	}
+
+	@Override
+	public LongCounter counter(String name) {
+		Objects.requireNonNull(name);
+		LongCounter counter = counters.get(name);
+		if (counter != null) return counter;
+		LongCounter created = new LongCounter();
+		counter = counters.putIfAbsent(name, created);
+		if (counter != null) return counter;
+		register("Counter", name, created);
+		return created;
+	}
+
+	/**
+	 * @return the histograms by name; never null
+	 */
+	public SortedMap<String, LogLinearHistogram> histograms() {
+		return Collections.unmodifiableSortedMap(new TreeMap<>(histograms));
+	}
+
+	/**
+	 * @return the counters by name; never null
+	 */
+	public SortedMap<String, LongCounter> counters() {
+		return Collections.unmodifiableSortedMap(new TreeMap<>(counters));
+	}
+
+	/**
+	 * Registers the instruments with the platform MBean server
+	 *
+	 * @param domain the domain of their names; not null
+	 * @throws IllegalStateException if the registry is exported already or
+	 *         an instrument cannot be registered
+	 */
+	public void export(String domain) {
+		export(ManagementFactory.getPlatformMBeanServer(), domain);
+	}
+
+	/**
+	 * Registers the instruments, and any created from now on, with a server
+	 *
+	 * @param server the server; not null
+	 * @param domain the domain of their names; not null
+	 * @throws IllegalStateException if the registry is exported already or
+	 *         an instrument cannot be registered
+	 */
+	public synchronized void export(MBeanServer server, String domain) {
+		Objects.requireNonNull(server);
+		Objects.requireNonNull(domain);
+		if (this.server != null) throw new IllegalStateException("Registry already exported");
+		this.server = server;
+		this.domain = domain;
+		for (Map.Entry<String, LogLinearHistogram> entry : histograms.entrySet())
+			register("Histogram", entry.getKey(), entry.getValue());
+		for (Map.Entry<String, LongCounter> entry : counters.entrySet())
+			register("Counter", entry.getKey(), entry.getValue());
+	}
+
+	private synchronized void register(String type, String name, Object instrument) {
+		if (server == null) return;
+		try {
+			ObjectName objectName = new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+			if (!server.isRegistered(objectName)) server.registerMBean(instrument, objectName);
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot export " + type.toLowerCase() + " " + name, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, LogLinearHistogram> entry : histograms().entrySet())
+			builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		for (Map.Entry<String, LongCounter> entry : counters().entrySet())
+			builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non negative longs with buckets in the manner of HdrHistogram:
+ * values below 64 have a bucket each, and every power of two above is split
+ * into 32 buckets of equal width, so a bucket is never wider than about 3%
+ * of its values. All of {@code long}'s range fits in under 2000 buckets.
+ *
+ * <br>
+ * Recording increments one bucket and a few totals and never blocks or
+ * allocates. Reading walks the buckets; a histogram read while values are
+ * recorded reports some of those values and not others.
+ */
+public class LogLinearHistogram implements MetricsRegistry.Histogram, HistogramMXBean {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int LINEAR = 2 * SUB_BUCKETS;		//values with a bucket each
+	private static final int BUCKETS = (Long.SIZE - 1 - SUB_BITS) * SUB_BUCKETS + LINEAR;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	@Override
+	public void record(long value) {
+		if (value < 0) value = 0;
+		buckets.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		for (long current = min.get(); value < current && !min.compareAndSet(current, value); )
+			current = min.get();
+		for (long current = max.get(); value > current && !max.compareAndSet(current, value); )
+			current = max.get();
+	}
+
+	static int bucket(long value) {
+		if (value < LINEAR) return (int) value;
+		int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	//the largest value of the bucket
+	static long highest(int bucket) {
+		if (bucket < LINEAR) return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * @param percentile the percentile, from 0 to 100
+	 * @return a value at least as large as that percentile of the recorded
+	 *         values and within about 3% of it; 0 if none were recorded
+	 */
+	public long percentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile not in [0, 100]");
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += buckets.get(i);
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) return Math.min(highest(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Forgets the recorded values. Values recorded at the same time may be
+	 * kept in part.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		min.set(Long.MAX_VALUE);
+		max.set(0);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public long getMin() {
+		long value = min.get();
+		return value == Long.MAX_VALUE ? 0 : value;
+	}
+
+	@Override
+	public long getMax() {
+		return max.get();
+	}
+
+	@Override
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	@Override
+	public long getP50() {
+		return percentile(50);
+	}
+
+	@Override
+	public long getP90() {
+		return percentile(90);
+	}
+
+	@Override
+	public long getP99() {
+		return percentile(99);
+	}
+
+	@Override
+	public long getP999() {
+		return percentile(99.9);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+				getCount(), getMean(), getP50(), getP90(), getP99(), getMax());
+	}
+
+}
@@ -0,0 +1,36 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter kept in a {@link LongAdder}, so threads adding at the same time do
+ * not contend
+ */
+public class LongCounter implements MetricsRegistry.Counter, CounterMXBean {
+
+	private final LongAdder count = new LongAdder();
+	private final long created = System.nanoTime();
+
+	@Override
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getRatePerSecond() {
+		long nanos = Math.max(1, System.nanoTime() - created);
+		return count.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d rate=%.1f/s", getCount(), getRatePerSecond());
+	}
+
+}
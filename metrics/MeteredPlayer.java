@@ -0,0 +1,79 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+
+/**
+ * Plays a {@link Player} and records how long its decisions take, from the
+ * call of {@link #makeMove} to the call of the callback, whichever thread
+ * makes it. Every decision is recorded twice: in the histogram
+ * {@code decision.<colour>} of the colour to move, e.g.
+ * {@code decision.BLACK}, and in {@code decision.player.<name>} of the
+ * player.
+ */
+public class MeteredPlayer implements Player {
+
+	/**
+	 * Prefix of the names of the decision histograms
+	 */
+	public static final String DECISION = "decision.";
+
+	private final Player player;
+	private final MetricsRegistry registry;
+	private final MetricsRegistry.Histogram byPlayer;
+	private final MetricsRegistry.Histogram[] byColour =
+			new MetricsRegistry.Histogram[Colour.values().length];
+
+	/**
+	 * Creates a player named after the simple name of its class
+	 *
+	 * @param player the player; not null
+	 * @param registry the registry of the histograms; not null
+	 */
+	public MeteredPlayer(Player player, MetricsRegistry registry) {
+		this(player, registry, player.getClass().getSimpleName());
+	}
+
+	/**
+	 * Creates a player
+	 *
+	 * @param player the player; not null
+	 * @param registry the registry of the histograms; not null
+	 * @param name the name of the player's implementation, e.g. the name of
+	 *        its AI; not null
+	 */
+	public MeteredPlayer(Player player, MetricsRegistry registry, String name) {
+		this.player = Objects.requireNonNull(player);
+		this.registry = Objects.requireNonNull(registry);
+		this.byPlayer = registry.histogram(DECISION + "player." + Objects.requireNonNull(name));
+	}
+
+	@Override
+	public void makeMove(ScotlandYardView view, int location, Set<Move> moves,
+			Consumer<Move> callback) {
+		MetricsRegistry.Histogram colour = byColour(view.getCurrentPlayer());
+		long start = System.nanoTime();
+		player.makeMove(view, location, moves, move -> {
+			long nanos = System.nanoTime() - start;
+			colour.record(nanos);
+			byPlayer.record(nanos);
+			callback.accept(move);
+		});
+	}
+
+	private MetricsRegistry.Histogram byColour(Colour colour) {
+		MetricsRegistry.Histogram histogram = byColour[colour.ordinal()];
+		if (histogram == null) { //a race looks the same histogram up twice
+			histogram = registry.histogram(DECISION + colour);
+			byColour[colour.ordinal()] = histogram;
+		}
+		return histogram;
+	}
+
+}
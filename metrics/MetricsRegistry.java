@@ -0,0 +1,77 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+/**
+ * Creates the instruments a game is measured with. A registry returns the
+ * same instrument every time it is asked for the same name, so callers may
+ * look instruments up once and keep them.
+ *
+ * <br>
+ * {@link InMemoryRegistry} keeps the numbers in memory and can export them
+ * over JMX; {@link #NONE} drops them. Instruments are called on the threads
+ * playing the game and must be cheap to record to and safe to use from
+ * several threads.
+ */
+public interface MetricsRegistry {
+
+	/**
+	 * Registry whose instruments ignore every value
+	 */
+	MetricsRegistry NONE = new MetricsRegistry() {
+		private final Histogram histogram = value -> {};
+		private final Counter counter = amount -> {};
+
+		@Override
+		public Histogram histogram(String name) {
+			return histogram;
+		}
+
+		@Override
+		public Counter counter(String name) {
+			return counter;
+		}
+	};
+
+	/**
+	 * A distribution of values, e.g. durations in nanoseconds
+	 */
+	@FunctionalInterface
+	interface Histogram {
+
+		/**
+		 * @param value the value to record; negative values count as 0
+		 */
+		void record(long value);
+	}
+
+	/**
+	 * A running total
+	 */
+	@FunctionalInterface
+	interface Counter {
+
+		/**
+		 * @param amount the amount to add; not negative
+		 */
+		void add(long amount);
+
+		/**
+		 * Adds one
+		 */
+		default void increment() {
+			add(1);
+		}
+	}
+
+	/**
+	 * @param name the name of the histogram; not null
+	 * @return the histogram with that name; never null
+	 */
+	Histogram histogram(String name);
+
+	/**
+	 * @param name the name of the counter; not null
+	 * @return the counter with that name; never null
+	 */
+	Counter counter(String name);
+
+}
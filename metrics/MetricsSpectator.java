@@ -0,0 +1,131 @@
+package uk.ac.bris.cs.scotlandyard.metrics;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.ModelTimer;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardModel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYardView;
+import uk.ac.bris.cs.scotlandyard.model.Spectator;
+
+/**
+ * Measures one game. As a {@link Spectator} it counts the moves and, when
+ * the game is over, records how long the game took and how many moves per
+ * second were played; as the model's {@link ModelTimer} it records the time
+ * spent generating moves and checking for a winner. A double move counts as
+ * one move, its halves are not counted again.
+ *
+ * <br>
+ * The game is timed from the creation of the spectator, so create it, e.g.
+ * with {@link #attach}, just before the game starts.
+ */
+public class MetricsSpectator implements Spectator, ModelTimer {
+
+	/**
+	 * Histogram of the durations of games, in nanoseconds
+	 */
+	public static final String GAME_DURATION = "game.duration";
+	/**
+	 * Histogram of the moves per second of games
+	 */
+	public static final String MOVES_PER_SECOND = "game.movesPerSecond";
+	/**
+	 * Counter of the moves of all games
+	 */
+	public static final String MOVES = "game.moves";
+	/**
+	 * Counter of the games that are over
+	 */
+	public static final String GAMES = "game.games";
+	/**
+	 * Histogram of the times taken to generate the valid moves, in nanoseconds
+	 */
+	public static final String MOVE_GENERATION = "model.moveGeneration";
+	/**
+	 * Histogram of the times taken to check whether the game is over, in
+	 * nanoseconds
+	 */
+	public static final String WIN_CHECK = "model.winCheck";
+
+	private final MetricsRegistry.Histogram duration;
+	private final MetricsRegistry.Histogram movesPerSecond;
+	private final MetricsRegistry.Counter moveCount;
+	private final MetricsRegistry.Counter games;
+	private final MetricsRegistry.Histogram moveGeneration;
+	private final MetricsRegistry.Histogram winCheck;
+	private final long start = System.nanoTime();
+	private long moves;
+	private int halves;		//halves of a double move still to be announced
+	private boolean over;		//startRotate() tells the spectators again when the game is over
+
+	/**
+	 * @param registry the registry of the instruments; not null
+	 */
+	public MetricsSpectator(MetricsRegistry registry) {
+		Objects.requireNonNull(registry);
+		duration = registry.histogram(GAME_DURATION);
+		movesPerSecond = registry.histogram(MOVES_PER_SECOND);
+		moveCount = registry.counter(MOVES);
+		games = registry.counter(GAMES);
+		moveGeneration = registry.histogram(MOVE_GENERATION);
+		winCheck = registry.histogram(WIN_CHECK);
+	}
+
+	/**
+	 * Creates a spectator and makes it the model's spectator and timer
+	 *
+	 * @param model the model, not started; not null
+	 * @param registry the registry of the instruments; not null
+	 * @return the spectator; never null
+	 */
+	public static MetricsSpectator attach(ScotlandYardModel model, MetricsRegistry registry) {
+		MetricsSpectator spectator = new MetricsSpectator(registry);
+		model.registerSpectator(spectator);
+		model.setTimer(spectator);
+		return spectator;
+	}
+
+	/**
+	 * @return the moves of the game so far
+	 */
+	public long moves() {
+		return moves;
+	}
+
+	@Override
+	public void onMoveMade(ScotlandYardView view, Move move) {
+		if (move instanceof DoubleMove) {
+			halves = 2;
+		} else if (halves > 0) {
+			halves--;
+			return;
+		}
+		moves++;
+		moveCount.increment();
+	}
+
+	@Override
+	public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+		if (over) return;
+		over = true;
+		long nanos = Math.max(1, System.nanoTime() - start);
+		duration.record(nanos);
+		movesPerSecond.record(moves * TimeUnit.SECONDS.toNanos(1) / nanos);
+		games.increment();
+	}
+
+	@Override
+	public void onMovesGenerated(long nanos) {
+		moveGeneration.record(nanos);
+	}
+
+	@Override
+	public void onWinChecked(long nanos) {
+		winCheck.record(nanos);
+	}
+
+}
@@ -0,0 +1,14 @@
+/**
+ * Measuring where the time of a game goes
+ *
+ * <br>
+ * A {@link uk.ac.bris.cs.scotlandyard.metrics.MetricsSpectator} attached to
+ * a model records the game's duration, its moves per second and the time the
+ * model spends generating moves and checking for a winner. Wrapping players
+ * in {@link uk.ac.bris.cs.scotlandyard.metrics.MeteredPlayer} records how
+ * long each decision takes, per colour and per player implementation. The
+ * numbers go to a {@link uk.ac.bris.cs.scotlandyard.metrics.MetricsRegistry};
+ * recording costs a few atomic additions and the statistics are only worked
+ * out when they are read.
+ */
+package uk.ac.bris.cs.scotlandyard.metrics;
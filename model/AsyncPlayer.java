@@ -0,0 +1,75 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A player that chooses its moves asynchronously. Unlike {@link Player} the
+ * decision is returned as a future, so no thread has to wait for it. Use
+ * {@link DeadlinePlayer} to play an asynchronous player in a
+ * {@link ScotlandYardGame} with a time limit per move.
+ */
+@FunctionalInterface
+public interface AsyncPlayer {
+
+	/**
+	 * Called when the player is required to make a move
+	 *
+	 * @param view a view of the current {@link ScotlandYardGame}; the game
+	 *        does not change until the returned future completes, but the view
+	 *        must not be used after that, so a decision that may outlive its
+	 *        future, e.g. one that is cancelled, should be given a
+	 *        {@link GameSnapshot}; never null
+	 * @param location the location of the player
+	 * @param moves valid moves the player can make; never empty and never null
+	 * @return a future completed with the chosen move; never null
+	 */
+	CompletableFuture<Move> chooseMove(ScotlandYardView view, int location, Set<Move> moves);
+
+	/**
+	 * Runs a blocking player on an executor, e.g. one starting a thread per
+	 * task, so a slow decision does not hold up the thread driving the game.
+	 * The player is given a {@link GameSnapshot} of the view, and cancelling
+	 * the returned future interrupts the thread the player runs on.
+	 *
+	 * @param player the player; not null
+	 * @param executor the executor to call {@link Player#makeMove} on; not null
+	 * @return the asynchronous player; never null
+	 */
+	static AsyncPlayer on(Executor executor, Player player) {
+		Objects.requireNonNull(executor);
+		Objects.requireNonNull(player);
+		return (view, location, moves) -> {
+			GameSnapshot snapshot = GameSnapshot.of(view);
+			CompletableFuture<Move> decision = new CompletableFuture<>();
+			AtomicReference<Thread> running = new AtomicReference<>();
+			executor.execute(() -> {
+				if (decision.isDone()) return;
+				running.set(Thread.currentThread());
+				try {
+					if (!decision.isCancelled())
+						player.makeMove(snapshot, location, moves, decision::complete);
+				} catch (RuntimeException | Error e) {
+					decision.completeExceptionally(e);
+				} finally {
+					synchronized (running) { // an interrupt meant for this decision must not reach the next task
+						running.set(null);
+						Thread.interrupted();
+					}
+				}
+			});
+			decision.whenComplete((move, error) -> {
+				if (!decision.isCancelled()) return;
+				synchronized (running) {
+					Thread thread = running.get();
+					if (thread != null) thread.interrupt();
+				}
+			});
+			return decision;
+		};
+	}
+
+}
@@ -0,0 +1,307 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
+import uk.ac.bris.cs.gamekit.graph.Node;
+import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
+
+/**
+ * A Scotland Yard map in a compact binary format that is read in place, e.g.
+ * from a memory-mapped file, instead of being parsed.
+ *
+ * <br>
+ * The format is big-endian and consists of
+ * <ul>
+ * <li>a header: magic number, format version, node count, edge count and the
+ * {@link IndexedGraph#fingerprint()} of the map</li>
+ * <li>the node values in ascending order, one int each</li>
+ * <li>node count + 1 ints of offsets into the edges, the edges leaving the
+ * node at index i are the ones from offset i up to offset i + 1</li>
+ * <li>the edges, one int each holding the index of the destination node
+ * shifted left by two and the ordinal of the {@link Transport}</li>
+ * </ul>
+ * Both directions of an edge of the map are stored.
+ */
+public final class CompiledMap {
+
+	private static final int MAGIC = 0x5359_4D50; // "SYMP"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 * 4 + 8;
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final ByteBuffer buffer;
+	private final int nodeCount;
+	private final int edgeCount;
+	private final long fingerprint;
+	private final int offsetsAt;
+	private final int edgesAt;
+
+	private CompiledMap(ByteBuffer source) {
+		this.buffer = source.slice().order(ByteOrder.BIG_ENDIAN);
+		if (buffer.remaining() < HEADER_BYTES)
+			throw new IllegalArgumentException("Compiled map is shorter than its header");
+		if (buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException("Not a compiled map, bad magic number");
+		if (buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Unsupported compiled map version " + buffer.getInt(4));
+		this.nodeCount = buffer.getInt(8);
+		this.edgeCount = buffer.getInt(12);
+		this.fingerprint = buffer.getLong(16);
+		if (nodeCount < 0 || edgeCount < 0)
+			throw new IllegalArgumentException("Negative node or edge count");
+
+		// in long, a corrupt count would overflow int; narrowed once known to fit the buffer
+		long offsets = HEADER_BYTES + (long) nodeCount * 4;
+		long edges = offsets + ((long) nodeCount + 1) * 4;
+		long expected = edges + (long) edgeCount * 4;
+		if (buffer.remaining() < expected)
+			throw new IllegalArgumentException(
+					"Compiled map truncated, expected " + expected + " bytes but got "
+							+ buffer.remaining());
+		this.offsetsAt = (int) offsets;
+		this.edgesAt = (int) edges;
+		verify();
+	}
+
+	// one pass over the sections, so a corrupt map fails here rather than with an index out of bounds in a game
+	private void verify() {
+		for (int i = 0; i < nodeCount; i++) {
+			if (node(i) < 0)
+				throw new IllegalArgumentException("Negative node " + node(i));
+			if (i > 0 && node(i) <= node(i - 1))
+				throw new IllegalArgumentException("Nodes not in ascending order at index " + i);
+		}
+		// offsets from 0 up to the edge count that never decrease are all in range
+		if (firstEdge(0) != 0)
+			throw new IllegalArgumentException("Edge offsets do not start at 0");
+		for (int i = 0; i < nodeCount; i++) {
+			if (endEdge(i) < firstEdge(i))
+				throw new IllegalArgumentException("Edge offsets decrease at node index " + i);
+		}
+		if (firstEdge(nodeCount) != edgeCount)
+			throw new IllegalArgumentException("Edge offsets do not match edge count");
+		for (int edge = 0; edge < edgeCount; edge++) {
+			if (destinationIndex(edge) >= nodeCount)
+				throw new IllegalArgumentException("Edge " + edge + " leads to node index "
+						+ destinationIndex(edge) + " of " + nodeCount);
+		}
+	}
+
+	/**
+	 * Reads a compiled map in place from a buffer; the buffer's content must
+	 * not change while the map is used. The sections are checked once: node
+	 * values ascending and not negative, edge offsets from zero up to the edge
+	 * count, and destinations of existing nodes
+	 *
+	 * @param buffer the buffer, from its position to its limit; not null
+	 * @return the map; never null
+	 * @throws IllegalArgumentException if the buffer holds no valid compiled
+	 *         map
+	 */
+	public static CompiledMap wrap(ByteBuffer buffer) {
+		return new CompiledMap(Objects.requireNonNull(buffer));
+	}
+
+	/**
+	 * Memory-maps a compiled map file
+	 *
+	 * @param path the file; not null
+	 * @return the map; never null
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file holds no valid compiled
+	 *         map
+	 */
+	public static CompiledMap map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return wrap(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Compiles a graph
+	 *
+	 * @param graph the graph; not null, node values must not be negative
+	 * @return a buffer holding the compiled map, positioned at zero; never
+	 *         null
+	 * @throws IllegalArgumentException if a node value is negative or the
+	 *         compiled map would not fit in a buffer
+	 */
+	public static ByteBuffer compile(Graph<Integer, Transport> graph) {
+		List<Node<Integer>> graphNodes = graph.getNodes();
+		int[] nodes = new int[graphNodes.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = graphNodes.get(i).value();
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative node " + nodes[i]);
+		}
+		Arrays.sort(nodes);
+
+		long edgeTotal = 0;
+		for (Node<Integer> node : graphNodes)
+			edgeTotal += graph.getEdgesFrom(node).size();
+
+		// in long like the reader, the sections of a huge map would overflow int
+		long size = HEADER_BYTES + (long) nodes.length * 4 + ((long) nodes.length + 1) * 4 + edgeTotal * 4;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Compiled map of " + nodes.length + " nodes and " + edgeTotal
+					+ " edges takes " + size + " bytes, more than a buffer holds");
+		int edges = (int) edgeTotal;
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(nodes.length).putInt(edges);
+		buffer.putLong(new IndexedGraph(graph).fingerprint());
+		for (int node : nodes)
+			buffer.putInt(node);
+
+		int offset = 0;
+		for (int node : nodes) {
+			buffer.putInt(offset);
+			offset += graph.getEdgesFrom(graph.getNode(node)).size();
+		}
+		buffer.putInt(offset);
+
+		for (int node : nodes) {
+			for (Edge<Integer, Transport> edge : graph.getEdgesFrom(graph.getNode(node))) {
+				int destination = Arrays.binarySearch(nodes, edge.destination().value());
+				buffer.putInt(destination << 2 | edge.data().ordinal());
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Converts a map in the text format of {@link ScotlandYardGraphReader}
+	 * into a compiled map file
+	 *
+	 * @param text the text map; not null
+	 * @param compiled the compiled map to write; not null, replaced if it
+	 *        exists
+	 * @throws IOException if either file cannot be accessed
+	 */
+	public static void convert(Path text, Path compiled) throws IOException {
+		ByteBuffer buffer = compile(ScotlandYardGraphReader.fromPath(text));
+		try (FileChannel channel = FileChannel.open(compiled, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @return the number of nodes of the map
+	 */
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return the number of directed edges of the map
+	 */
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @return the {@link IndexedGraph#fingerprint()} of the map
+	 */
+	public long fingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @param index index of the node, zero or greater and less than
+	 *        {@link #nodeCount()}
+	 * @return the value of the node
+	 */
+	public int node(int index) {
+		return buffer.getInt(HEADER_BYTES + index * 4);
+	}
+
+	/**
+	 * @param node a node value
+	 * @return the index of the node, or a negative value if the map does not
+	 *         contain it
+	 */
+	public int indexOf(int node) {
+		int low = 0;
+		int high = nodeCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = node(middle);
+			if (value < node) low = middle + 1;
+			else if (value > node) high = middle - 1;
+			else return middle;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @param index index of a node
+	 * @return the first edge leaving the node
+	 */
+	public int firstEdge(int index) {
+		return buffer.getInt(offsetsAt + index * 4);
+	}
+
+	/**
+	 * @param index index of a node
+	 * @return one past the last edge leaving the node
+	 */
+	public int endEdge(int index) {
+		return buffer.getInt(offsetsAt + (index + 1) * 4);
+	}
+
+	/**
+	 * @param edge an edge, zero or greater and less than {@link #edgeCount()}
+	 * @return index of the destination node of the edge
+	 */
+	public int destinationIndex(int edge) {
+		return buffer.getInt(edgesAt + edge * 4) >>> 2;
+	}
+
+	/**
+	 * @param edge an edge, zero or greater and less than {@link #edgeCount()}
+	 * @return the transport of the edge; never null
+	 */
+	public Transport transport(int edge) {
+		return TRANSPORTS[buffer.getInt(edgesAt + edge * 4) & 0x3];
+	}
+
+	/**
+	 * Builds a graph for {@link ScotlandYardGame} to use from the map. A
+	 * {@link ScotlandYardModel} on a compiled map does not need it to play,
+	 * see {@link IndexedGraph#IndexedGraph(CompiledMap)}; it only builds it
+	 * for {@link ScotlandYardView#getGraph()}
+	 *
+	 * @return the graph; never null
+	 */
+	public ImmutableGraph<Integer, Transport> toGraph() {
+		UndirectedGraph<Integer, Transport> graph = new UndirectedGraph<>();
+		for (int i = 0; i < nodeCount; i++)
+			graph.addNode(new Node<>(node(i)));
+		for (int i = 0; i < nodeCount; i++) {
+			Node<Integer> source = graph.getNode(node(i));
+			boolean loop = false;
+			for (int edge = firstEdge(i); edge < endEdge(i); edge++) {
+				int destination = destinationIndex(edge);
+				// the other direction is added by the undirected graph, a loop is stored twice
+				if (destination < i) continue;
+				if (destination == i && !(loop = !loop)) continue;
+				graph.addEdge(new Edge<>(source, graph.getNode(node(destination)), transport(edge)));
+			}
+		}
+		return new ImmutableGraph<>(graph);
+	}
+
+}
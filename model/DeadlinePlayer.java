@@ -0,0 +1,128 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Plays an {@link AsyncPlayer} as a {@link Player} with a time limit per move.
+ * When the decision is not made within the limit, fails, or is not one of the
+ * valid moves, a fallback move is played instead and the decision is
+ * cancelled.
+ *
+ * <br>
+ * The game goes on while a cancelled decision may still be running, so the
+ * player is given a {@link GameSnapshot} of the view rather than the view
+ * itself.
+ *
+ * <br>
+ * The callback is called exactly once, on the thread that completes the
+ * decision or on the timer's thread when the time is up. A decision that is
+ * already complete is answered before {@link #makeMove} returns. When the
+ * callback throws on one of those threads, the exception is passed to the
+ * thread's uncaught exception handler, as nothing else would see it.
+ */
+public class DeadlinePlayer implements Player {
+
+	/**
+	 * Fallback playing the first move of the valid moves
+	 */
+	public static final Function<Set<Move>, Move> FIRST_VALID_MOVE = moves -> moves.iterator()
+			.next();
+
+	private final AsyncPlayer player;
+	private final long timeoutNanos;
+	private final ScheduledExecutorService timer;
+	private final Function<Set<Move>, Move> fallback;
+
+	/**
+	 * Creates a player falling back to {@link #FIRST_VALID_MOVE}
+	 *
+	 * @param player the player; not null
+	 * @param timeout time the player has per move; greater than zero
+	 * @param unit unit of the timeout; not null
+	 * @param timer the executor scheduling the time limits; not null
+	 */
+	public DeadlinePlayer(AsyncPlayer player, long timeout, TimeUnit unit,
+			ScheduledExecutorService timer) {
+		this(player, timeout, unit, timer, FIRST_VALID_MOVE);
+	}
+
+	/**
+	 * Creates a player
+	 *
+	 * @param player the player; not null
+	 * @param timeout time the player has per move; greater than zero
+	 * @param unit unit of the timeout; not null
+	 * @param timer the executor scheduling the time limits; not null
+	 * @param fallback chooses the move to play from the valid moves when the
+	 *        player does not decide in time; not null, must return a valid
+	 *        move
+	 */
+	public DeadlinePlayer(AsyncPlayer player, long timeout, TimeUnit unit,
+			ScheduledExecutorService timer, Function<Set<Move>, Move> fallback) {
+		this.player = Objects.requireNonNull(player);
+		if (timeout <= 0) throw new IllegalArgumentException("timeout <= 0");
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.timer = Objects.requireNonNull(timer);
+		this.fallback = Objects.requireNonNull(fallback);
+	}
+
+	@Override
+	public void makeMove(ScotlandYardView view, int location, Set<Move> moves,
+			Consumer<Move> callback) {
+		CompletableFuture<Move> decision;
+		try {
+			decision = Objects.requireNonNull(player.chooseMove(GameSnapshot.of(view), location, moves),
+					"decision == null");
+		} catch (RuntimeException e) {
+			callback.accept(fallback.apply(moves));
+			return;
+		}
+		if (decision.isDone()) {
+			callback.accept(answer(decision, moves));
+			return;
+		}
+
+		AtomicBoolean answered = new AtomicBoolean();
+		ScheduledFuture<?> deadline = timer.schedule(() -> {
+			if (!answered.compareAndSet(false, true)) return;
+			decision.cancel(true);
+			answer(callback, fallback.apply(moves));
+		}, timeoutNanos, TimeUnit.NANOSECONDS);
+		decision.whenComplete((move, error) -> {
+			if (!answered.compareAndSet(false, true)) return;
+			deadline.cancel(false);
+			answer(callback, error == null ? valid(move, moves) : fallback.apply(moves));
+		});
+	}
+
+	private Move answer(CompletableFuture<Move> decision, Set<Move> moves) {
+		try {
+			return valid(decision.join(), moves);
+		} catch (RuntimeException e) {
+			return fallback.apply(moves);
+		}
+	}
+
+	private Move valid(Move move, Set<Move> moves) {
+		return move != null && moves.contains(move) ? move : fallback.apply(moves);
+	}
+
+	// answers on the timer's or the decision's thread, where an exception would be swallowed
+	private static void answer(Consumer<Move> callback, Move move) {
+		try {
+			callback.accept(move);
+		} catch (RuntimeException | Error e) {
+			Thread current = Thread.currentThread();
+			current.getUncaughtExceptionHandler().uncaughtException(current, e);
+		}
+	}
+
+}
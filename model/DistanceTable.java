@@ -0,0 +1,199 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed shortest path distances, in number of moves, between all pairs
+ * of nodes of a map. Distances are kept in a flat array of unsigned 16 bit
+ * cells, so a query is a single array access.
+ *
+ * <br>
+ * A table can either use every transport, like {@link #of(IndexedGraph)}, or
+ * only some of them, e.g. the distances a detective who only has taxi tickets
+ * left can cover. Tables are cached by the graph's
+ * {@link IndexedGraph#fingerprint()}, so every game on the same map shares
+ * them; the cache holds at most {@link #MAX_CACHED_BYTES} of tables and drops
+ * the least recently used ones beyond that.
+ */
+public final class DistanceTable {
+
+	/**
+	 * Distance between two nodes that are not connected
+	 */
+	public static final int UNREACHABLE = 0xFFFF;
+
+	/**
+	 * Maximum number of nodes a table is built for, the table of a graph
+	 * this size takes 32MB. Every distance on such a graph is below
+	 * {@link #UNREACHABLE}
+	 */
+	public static final int MAX_NODES = 4096;
+
+	/**
+	 * Maximum total size of the cached tables, in bytes
+	 */
+	public static final long MAX_CACHED_BYTES = 128L << 20;
+
+	// in access order, guarded by itself
+	private static final LinkedHashMap<Long, DistanceTable> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+	private static long cachedBytes;
+
+	private final IndexedGraph graph;
+	private final Set<Transport> transports;
+	private final int[] indexOf; // node value -> row of the table
+	private final int size;
+	private final char[] distances;
+
+	private DistanceTable(IndexedGraph graph, Set<Transport> transports, boolean parallel) {
+		this.graph = graph;
+		this.transports = transports;
+		this.size = graph.nodeCount();
+		this.indexOf = new int[graph.maxNode() + 1];
+		Arrays.fill(indexOf, -1);
+		for (int i = 0; i < size; i++)
+			indexOf[graph.node(i)] = i;
+
+		this.distances = new char[size * size];
+		Arrays.fill(distances, (char) UNREACHABLE);
+		Transport[] lanes = transports.toArray(new Transport[0]);
+		IntStream rows = IntStream.range(0, size);
+		if (parallel) rows = rows.parallel();
+		rows.forEach(row -> breadthFirst(row, lanes));
+	}
+
+	private void breadthFirst(int row, Transport[] lanes) {
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		int offset = row * size;
+		queue[tail++] = graph.node(row);
+		distances[offset + row] = 0;
+		while (head < tail) {
+			int node = queue[head++];
+			int next = distances[offset + indexOf[node]] + 1;
+			for (Transport transport : lanes) {
+				for (int destination : graph.neighbours(node, transport)) {
+					int column = indexOf[destination];
+					if (distances[offset + column] != UNREACHABLE) continue;
+					distances[offset + column] = (char) next;
+					queue[tail++] = destination;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the table of distances over all transports, building it in
+	 * parallel if no game on the same map built it before
+	 *
+	 * @param graph the graph; not null, at most {@link #MAX_NODES} nodes
+	 * @return the table; never null
+	 */
+	public static DistanceTable of(IndexedGraph graph) {
+		return of(graph, EnumSet.allOf(Transport.class));
+	}
+
+	/**
+	 * Returns the table of distances using only the given transports,
+	 * building it in parallel if no game on the same map built it before
+	 *
+	 * @param graph the graph; not null, at most {@link #MAX_NODES} nodes
+	 * @param transports the transports that may be used; not null
+	 * @return the table; never null
+	 */
+	public static DistanceTable of(IndexedGraph graph, Set<Transport> transports) {
+		Objects.requireNonNull(graph);
+		Set<Transport> lanes = copyOf(transports);
+		long key = graph.fingerprint() * 31 + mask(lanes);
+		DistanceTable table;
+		synchronized (CACHE) {
+			table = CACHE.get(key);
+		}
+		if (table != null && table.graph.nodeCount() == graph.nodeCount()) return table;
+		table = build(graph, lanes, true);
+		cache(key, table);
+		return table;
+	}
+
+	private static void cache(long key, DistanceTable table) {
+		synchronized (CACHE) {
+			DistanceTable replaced = CACHE.put(key, table);
+			if (replaced != null) cachedBytes -= replaced.bytes();
+			cachedBytes += table.bytes();
+			Iterator<DistanceTable> eldest = CACHE.values().iterator();
+			while (cachedBytes > MAX_CACHED_BYTES && eldest.hasNext()) {
+				DistanceTable evicted = eldest.next();
+				if (evicted == table) continue;
+				cachedBytes -= evicted.bytes();
+				eldest.remove();
+			}
+		}
+	}
+
+	private long bytes() {
+		return (long) distances.length * 2;
+	}
+
+	/**
+	 * Builds a table without caching it
+	 *
+	 * @param graph the graph; not null, at most {@link #MAX_NODES} nodes
+	 * @param transports the transports that may be used; not null
+	 * @param parallel whether to run the searches from every node in parallel
+	 * @return the table; never null
+	 */
+	public static DistanceTable build(IndexedGraph graph, Set<Transport> transports,
+			boolean parallel) {
+		if (!supports(graph))
+			throw new IllegalArgumentException("Graph has more than " + MAX_NODES + " nodes");
+		return new DistanceTable(graph, copyOf(transports), parallel);
+	}
+
+	private static Set<Transport> copyOf(Set<Transport> transports) {
+		Set<Transport> copy = EnumSet.noneOf(Transport.class);
+		copy.addAll(transports);
+		return copy;
+	}
+
+	/**
+	 * @param graph the graph; not null
+	 * @return true if a table can be built for the graph, false if it is too
+	 *         large
+	 */
+	public static boolean supports(IndexedGraph graph) {
+		return graph.nodeCount() <= MAX_NODES;
+	}
+
+	private static int mask(Set<Transport> transports) {
+		int mask = 0;
+		for (Transport transport : transports)
+			mask |= 1 << transport.ordinal();
+		return mask;
+	}
+
+	/**
+	 * @return the transports the distances are measured with; never null
+	 */
+	public Set<Transport> transports() {
+		return Collections.unmodifiableSet(transports);
+	}
+
+	/**
+	 * The minimum number of moves between two nodes
+	 *
+	 * @param source the source node; must be in the graph
+	 * @param destination the destination node; must be in the graph
+	 * @return the distance, {@link #UNREACHABLE} if there is no path
+	 */
+	public int distance(int source, int destination) {
+		return distances[indexOf[source] * size + indexOf[destination]];
+	}
+
+}
@@ -0,0 +1,557 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An append-only store of {@link GameRecord}s with an index for finding and
+ * loading single games without reading the rest.
+ *
+ * <br>
+ * An archive called {@code name} in a directory consists of
+ * <ul>
+ * <li>segment files {@code name-0.games}, {@code name-1.games}, ... holding
+ * the records one after the other; a segment is closed once it reaches
+ * {@link #SEGMENT_LIMIT} bytes</li>
+ * <li>{@code name.index}, {@link #ENTRY_BYTES} bytes per game in the order
+ * the games were added: the segment and offset of the record, its length,
+ * the number of moves, the winners as a bit per colour ordinal, the ids of
+ * the names of Mr. X's and the detectives' players (unsigned shorts), and
+ * the starting location per colour ordinal (0 if the colour did not play);
+ * big-endian</li>
+ * <li>{@code name.names}, the players' names, one per line, the line number
+ * being the name's id</li>
+ * </ul>
+ * A record and any new name are forced to the storage device before the
+ * game's index entry is written, so a game is either complete or not in the
+ * archive at all, even after a power failure; bytes after the last indexed
+ * record, left by a crash, are cut off when the archive is opened. Forcing
+ * makes an append cost a disk flush.
+ *
+ * <br>
+ * Records and the index are read through memory-mapped files, so loading a
+ * game by its id is an index lookup and a slice of a mapped segment, and a
+ * {@link Query} only reads the index.
+ */
+public final class GameArchive implements Closeable {
+
+	/**
+	 * Size of a segment file above which a new segment is started
+	 */
+	public static final int SEGMENT_LIMIT = 1 << 30;
+
+	/**
+	 * Size of an index entry
+	 */
+	public static final int ENTRY_BYTES = 32;
+
+	/**
+	 * Number of distinct player names an archive can hold
+	 */
+	public static final int MAX_NAMES = 1 << 16;
+
+	private static final Colour[] COLOURS = Colour.values();
+	private static final int SEGMENT = 0;
+	private static final int OFFSET = 4;
+	private static final int LENGTH = 8;
+	private static final int MOVES = 12;
+	private static final int WINNERS = 14;
+	private static final int MRX_NAME = 16;
+	private static final int DETECTIVES_NAME = 18;
+	private static final int LOCATIONS = 20;	//a short per colour ordinal
+
+	private final Path directory;
+	private final String name;
+	private final FileChannel index;
+	private final FileChannel names;
+	private final List<String> nameList = new ArrayList<>();
+	private final Map<String, Integer> nameIds = new HashMap<>();
+	private boolean namesWritten;				//names not forced yet
+	private FileChannel segment;				//the segment appended to
+	private int segmentNumber;
+	private int size;
+	private MappedByteBuffer indexMap;			//covers at least the first indexMapped entries
+	private int indexMapped;
+	private MappedByteBuffer[] segmentMaps = new MappedByteBuffer[0];
+
+	private GameArchive(Path directory, String name) throws IOException {
+		this.directory = directory;
+		this.name = name;
+		this.index = FileChannel.open(directory.resolve(name + ".index"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.names = FileChannel.open(directory.resolve(name + ".names"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		byte[] nameBytes = Files.readAllBytes(directory.resolve(name + ".names"));
+		int namesEnd = nameBytes.length;
+		while (namesEnd > 0 && nameBytes[namesEnd - 1] != '\n')
+			namesEnd--;
+		names.truncate(namesEnd); //a name cut short by a crash, no index entry refers to it
+		int lineStart = 0;
+		for (int i = 0; i < namesEnd; i++) {
+			if (nameBytes[i] != '\n') continue;
+			String line = new String(nameBytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+			nameIds.put(line, nameList.size());
+			nameList.add(line);
+			lineStart = i + 1;
+		}
+		names.position(namesEnd);
+
+		size = (int) (index.size() / ENTRY_BYTES);
+		index.truncate((long) size * ENTRY_BYTES); //an entry cut short by a crash
+		index.position(index.size());
+		long end = 0;
+		if (size > 0) {
+			ByteBuffer last = ByteBuffer.allocate(ENTRY_BYTES);
+			index.read(last, (long) (size - 1) * ENTRY_BYTES);
+			segmentNumber = last.getInt(SEGMENT);
+			end = (long) last.getInt(OFFSET) + last.getInt(LENGTH);
+		}
+		segment = openSegment(segmentNumber);
+		segment.truncate(end); //records that were not indexed
+		segment.position(end);
+	}
+
+	/**
+	 * Opens an archive, creating it if it does not exist
+	 *
+	 * @param directory the directory of the archive's files; not null, must
+	 *        exist
+	 * @param name the name of the archive; not null
+	 * @return the archive; never null
+	 * @throws IOException if the files cannot be accessed
+	 */
+	public static GameArchive open(Path directory, String name) throws IOException {
+		return new GameArchive(Objects.requireNonNull(directory), Objects.requireNonNull(name));
+	}
+
+	private FileChannel openSegment(int number) throws IOException {
+		return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private Path segmentPath(int number) {
+		return directory.resolve(name + "-" + number + ".games");
+	}
+
+	//================================WRITING===================================
+
+	/**
+	 * Adds a game
+	 *
+	 * @param record the record, from its position to its limit; not null,
+	 *        its position is not changed
+	 * @param winningPlayers the winners; not null
+	 * @param mrXPlayer the name of Mr. X's player, e.g. of its AI; not null
+	 * @param detectivesPlayer the name of the detectives' player; not null
+	 * @return the id of the game
+	 * @throws IllegalArgumentException if the buffer does not hold a record
+	 * @throws IllegalStateException if a name is new and the archive holds
+	 *         {@link #MAX_NAMES} names already
+	 * @throws IOException if the archive cannot be written
+	 */
+	public synchronized int append(ByteBuffer record, Set<Colour> winningPlayers, String mrXPlayer,
+			String detectivesPlayer) throws IOException {
+		GameRecord game = GameRecord.read(record);
+		int length = record.remaining();
+		if (segment.position() > 0 && segment.position() + length > SEGMENT_LIMIT) {
+			segment.close();
+			segmentNumber++;
+			segment = openSegment(segmentNumber);
+			segment.truncate(0); //left by a crash after the last segment was started
+		}
+		long offset = segment.position();
+
+		ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+		entry.putInt(SEGMENT, segmentNumber);
+		entry.putInt(OFFSET, (int) offset);
+		entry.putInt(LENGTH, length);
+		entry.putShort(MOVES, (short) Math.min(game.moveCount(), Short.MAX_VALUE));
+		int winners = 0;
+		for (Colour colour : winningPlayers)
+			winners |= 1 << colour.ordinal();
+		entry.put(WINNERS, (byte) winners);
+		entry.putShort(MRX_NAME, (short) nameId(mrXPlayer));
+		entry.putShort(DETECTIVES_NAME, (short) nameId(detectivesPlayer));
+		List<Colour> colours = game.colours();
+		for (int i = 0; i < colours.size(); i++)
+			entry.putShort(LOCATIONS + 2 * colours.get(i).ordinal(), (short) game.location(i));
+
+		ByteBuffer data = record.duplicate();
+		while (data.hasRemaining())
+			segment.write(data);
+		segment.force(false);
+		if (namesWritten) {
+			names.force(false);
+			namesWritten = false;
+		}
+		while (entry.hasRemaining())
+			index.write(entry);
+		return size++;
+	}
+
+	private int nameId(String player) throws IOException {
+		Integer id = nameIds.get(Objects.requireNonNull(player));
+		if (id != null) return id;
+		if (player.indexOf('\n') >= 0 || player.indexOf('\r') >= 0)
+			throw new IllegalArgumentException("Player name with a line break");
+		if (nameList.size() >= MAX_NAMES) throw new IllegalStateException("Archive holds " + MAX_NAMES + " names");
+		ByteBuffer line = ByteBuffer.wrap((player + "\n").getBytes(StandardCharsets.UTF_8));
+		while (line.hasRemaining())
+			names.write(line);
+		namesWritten = true;
+		nameIds.put(player, nameList.size());
+		nameList.add(player);
+		return nameList.size() - 1;
+	}
+
+	/**
+	 * Creates a recorder adding its game to the archive when the game is over.
+	 * Play the game with the recorder's {@link GameRecorder#configurations()}
+	 * and register it as a spectator, see {@link GameRecorder}.
+	 *
+	 * @param rounds the rounds of the game; not null
+	 * @param generator the move generator of the game's map; not null
+	 * @param configurations the players in order of play, Mr. X first; not
+	 *        null
+	 * @param mrXPlayer the name of Mr. X's player; not null
+	 * @param detectivesPlayer the name of the detectives' player; not null
+	 * @return the recorder; never null
+	 */
+	public GameRecorder recorder(List<Boolean> rounds, MoveGenerator generator,
+			List<PlayerConfiguration> configurations, String mrXPlayer, String detectivesPlayer) {
+		Objects.requireNonNull(mrXPlayer);
+		Objects.requireNonNull(detectivesPlayer);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		return new GameRecorder(Channels.newChannel(bytes), rounds, generator, configurations,
+				GameRecorder.MIN_BUFFER) {
+			@Override
+			public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+				super.onGameOver(view, winningPlayers);
+				if (bytes.size() == 0) return; //told again by startRotate()
+				try {
+					append(ByteBuffer.wrap(bytes.toByteArray()), winningPlayers, mrXPlayer,
+							detectivesPlayer);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				bytes.reset();
+			}
+		};
+	}
+
+	//================================READING===================================
+
+	/**
+	 * @return the number of games
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @param id the id of the game
+	 * @return the game's record, read in place from the mapped segment; never
+	 *         null
+	 * @throws IndexOutOfBoundsException if there is no game with the id
+	 * @throws UncheckedIOException if the archive cannot be read
+	 */
+	public synchronized GameRecord game(int id) {
+		ByteBuffer entry = entry(id);
+		int number = entry.getInt(SEGMENT);
+		int offset = entry.getInt(OFFSET);
+		int length = entry.getInt(LENGTH);
+		MappedByteBuffer map = segmentMap(number, (long) offset + length);
+		ByteBuffer record = map.duplicate();
+		record.position(offset);
+		record.limit(offset + length);
+		return GameRecord.read(record.slice());
+	}
+
+	/**
+	 * @param id the id of the game
+	 * @return what the index knows about the game; never null
+	 * @throws IndexOutOfBoundsException if there is no game with the id
+	 */
+	public synchronized Summary summary(int id) {
+		ByteBuffer entry = entry(id);
+		Set<Colour> winners = EnumSet.noneOf(Colour.class);
+		int bits = entry.get(WINNERS);
+		for (Colour colour : COLOURS)
+			if ((bits & 1 << colour.ordinal()) != 0) winners.add(colour);
+		int[] locations = new int[COLOURS.length];
+		for (int i = 0; i < locations.length; i++)
+			locations[i] = entry.getShort(LOCATIONS + 2 * i);
+		return new Summary(id, entry.getShort(MOVES), Collections.unmodifiableSet(winners),
+				nameList.get(entry.getShort(MRX_NAME) & 0xFFFF),
+				nameList.get(entry.getShort(DETECTIVES_NAME) & 0xFFFF),
+				locations);
+	}
+
+	/**
+	 * Finds the games matching a query by reading the index only
+	 *
+	 * @param query the query; not null
+	 * @return the ids of the matching games in ascending order; never null
+	 */
+	public synchronized int[] find(Query query) {
+		int mrXName = query.mrXPlayer == null ? -1 : nameIds.getOrDefault(query.mrXPlayer, -2);
+		int detectivesName = query.detectivesPlayer == null ? -1
+				: nameIds.getOrDefault(query.detectivesPlayer, -2);
+		int anyName = query.player == null ? -1 : nameIds.getOrDefault(query.player, -2);
+		if (mrXName == -2 || detectivesName == -2 || anyName == -2) return new int[0];
+		if (size == 0) return new int[0];
+		entry(size - 1); //maps the whole index
+
+		int[] found = new int[16];
+		int count = 0;
+		for (int id = 0; id < size; id++) {
+			int at = id * ENTRY_BYTES;
+			int moves = indexMap.getShort(at + MOVES);
+			if (moves < query.minMoves || moves > query.maxMoves) continue;
+			if (query.winners >= 0 && indexMap.get(at + WINNERS) != query.winners) continue;
+			int mrX = indexMap.getShort(at + MRX_NAME) & 0xFFFF;
+			int detectives = indexMap.getShort(at + DETECTIVES_NAME) & 0xFFFF;
+			if (mrXName >= 0 && mrX != mrXName) continue;
+			if (detectivesName >= 0 && detectives != detectivesName) continue;
+			if (anyName >= 0 && mrX != anyName && detectives != anyName) continue;
+			if (!startsMatch(query, at)) continue;
+			if (count == found.length) found = Arrays.copyOf(found, count * 2);
+			found[count++] = id;
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	private boolean startsMatch(Query query, int at) {
+		for (int i = 0; i < COLOURS.length; i++)
+			if (query.locations[i] > 0 && indexMap.getShort(at + LOCATIONS + 2 * i) != query.locations[i])
+				return false;
+		return true;
+	}
+
+	//the entry of the game, with absolute positions
+	private ByteBuffer entry(int id) {
+		if (id < 0 || id >= size) throw new IndexOutOfBoundsException("No game " + id);
+		if (id >= indexMapped) {
+			try {
+				indexMap = index.map(MapMode.READ_ONLY, 0, (long) size * ENTRY_BYTES);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			indexMapped = size;
+		}
+		ByteBuffer entry = indexMap.duplicate();
+		entry.position(id * ENTRY_BYTES);
+		entry.limit(id * ENTRY_BYTES + ENTRY_BYTES);
+		return entry.slice();
+	}
+
+	private MappedByteBuffer segmentMap(int number, long end) {
+		if (number >= segmentMaps.length) segmentMaps = Arrays.copyOf(segmentMaps, number + 1);
+		MappedByteBuffer map = segmentMaps[number];
+		if (map == null || map.capacity() < end) {
+			try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+				map = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			segmentMaps[number] = map;
+		}
+		return map;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			segment.close();
+			names.close();
+		} finally {
+			index.close();
+		}
+	}
+
+	//================================QUERIES===================================
+
+	/**
+	 * What the index of an archive knows about a game
+	 */
+	public static final class Summary {
+
+		private final int id;
+		private final int moves;
+		private final Set<Colour> winningPlayers;
+		private final String mrXPlayer;
+		private final String detectivesPlayer;
+		private final int[] locations;
+
+		private Summary(int id, int moves, Set<Colour> winningPlayers, String mrXPlayer,
+				String detectivesPlayer, int[] locations) {
+			this.id = id;
+			this.moves = moves;
+			this.winningPlayers = winningPlayers;
+			this.mrXPlayer = mrXPlayer;
+			this.detectivesPlayer = detectivesPlayer;
+			this.locations = locations;
+		}
+
+		/**
+		 * @return the id of the game
+		 */
+		public int id() {
+			return id;
+		}
+
+		/**
+		 * @return the number of moves, a double move counting as one
+		 */
+		public int moves() {
+			return moves;
+		}
+
+		/**
+		 * @return the winners; never null
+		 */
+		public Set<Colour> winningPlayers() {
+			return winningPlayers;
+		}
+
+		/**
+		 * @return the name of Mr. X's player; never null
+		 */
+		public String mrXPlayer() {
+			return mrXPlayer;
+		}
+
+		/**
+		 * @return the name of the detectives' player; never null
+		 */
+		public String detectivesPlayer() {
+			return detectivesPlayer;
+		}
+
+		/**
+		 * @param colour the colour; not null
+		 * @return the starting location of the colour, 0 if it did not play
+		 */
+		public int startingLocation(Colour colour) {
+			return locations[colour.ordinal()];
+		}
+
+		@Override
+		public String toString() {
+			return "Summary{id=" + id + ", moves=" + moves + ", winners=" + winningPlayers
+					+ ", mrX=" + mrXPlayer + ", detectives=" + detectivesPlayer + '}';
+		}
+	}
+
+	/**
+	 * A query for {@link #find(Query)}; every condition set must hold, a new
+	 * query matches every game
+	 */
+	public static final class Query {
+
+		private int winners = -1;			//bit per colour ordinal, -1 for any
+		private int minMoves = 0;
+		private int maxMoves = Integer.MAX_VALUE;
+		private String mrXPlayer;
+		private String detectivesPlayer;
+		private String player;
+		private final int[] locations = new int[COLOURS.length];	//0 for any
+
+		/**
+		 * Matches the games won by exactly these players, e.g. Mr. X alone or
+		 * all the detectives, as {@link ScotlandYardView#getWinningPlayers()}
+		 * reported them
+		 *
+		 * @param winningPlayers the winners; not null
+		 * @return the query for chaining; never null
+		 */
+		public Query wonBy(Set<Colour> winningPlayers) {
+			int bits = 0;
+			for (Colour colour : winningPlayers)
+				bits |= 1 << colour.ordinal();
+			this.winners = bits;
+			return this;
+		}
+
+		/**
+		 * Matches the games with a number of moves in a range
+		 *
+		 * @param min the fewest moves, inclusive
+		 * @param max the most moves, inclusive
+		 * @return the query for chaining; never null
+		 */
+		public Query moves(int min, int max) {
+			this.minMoves = min;
+			this.maxMoves = max;
+			return this;
+		}
+
+		/**
+		 * Matches the games Mr. X was played by the named player in
+		 *
+		 * @param name the name given when the game was added; not null
+		 * @return the query for chaining; never null
+		 */
+		public Query mrXPlayer(String name) {
+			this.mrXPlayer = Objects.requireNonNull(name);
+			return this;
+		}
+
+		/**
+		 * Matches the games the detectives were played by the named player in
+		 *
+		 * @param name the name given when the game was added; not null
+		 * @return the query for chaining; never null
+		 */
+		public Query detectivesPlayer(String name) {
+			this.detectivesPlayer = Objects.requireNonNull(name);
+			return this;
+		}
+
+		/**
+		 * Matches the games the named player played either side in
+		 *
+		 * @param name the name given when the game was added; not null
+		 * @return the query for chaining; never null
+		 */
+		public Query player(String name) {
+			this.player = Objects.requireNonNull(name);
+			return this;
+		}
+
+		/**
+		 * Matches the games a colour started at a location in, e.g. the
+		 * locations {@link StandardGame} generated from a seed
+		 *
+		 * @param colour the colour; not null
+		 * @param location the starting location, greater than zero
+		 * @return the query for chaining; never null
+		 */
+		public Query startingAt(Colour colour, int location) {
+			if (location <= 0) throw new IllegalArgumentException("location <= 0");
+			this.locations[colour.ordinal()] = location;
+			return this;
+		}
+	}
+
+}
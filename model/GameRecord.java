@@ -0,0 +1,391 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A recorded game in a compact binary format, as written by
+ * {@link GameRecorder}, and the means to replay it.
+ *
+ * <br>
+ * The format is big-endian; a varint is an unsigned int in groups of seven
+ * bits, least significant first, with the high bit of a byte set if more
+ * follow. A record consists of
+ * <ul>
+ * <li>a header: magic number, format version (a byte), the number of rounds
+ * (a varint) and a bit per round, set for reveal rounds, packed eight to a
+ * byte; the {@link IndexedGraph#fingerprint()} of the map; the number of
+ * players (a byte) and per player in order of play its colour's ordinal (a
+ * byte), its location and its {@link MoveGenerator#TICKET_SLOTS} ticket
+ * counts (varints)</li>
+ * <li>the moves in order of play, a varint each, up to the end of the
+ * record</li>
+ * </ul>
+ * A move does not store its colour, which follows from the order of play,
+ * nor its destination, but the rank of the destination among the neighbours
+ * of the player's location in ascending order:
+ * {@link IndexedGraph#neighbours(int, Transport)} for the transport of the
+ * ticket, {@link IndexedGraph#neighbours(int)} for a secret ticket. The rank
+ * does not depend on the order the map's edges were read in, which the
+ * map's fingerprint does not cover either. A pass is 0, a ticket move is
+ * {@code (rank << 3 | ticket ordinal) << 2 | 1}, and a double move is its
+ * first move in that form with {@code 2} in the low bits, followed by its
+ * second move. Most moves take a single byte and a whole game a few hundred.
+ */
+public final class GameRecord {
+
+	static final int MAGIC = 0x5359_4752; // "SYGR"
+	static final int VERSION = 2;
+
+	static final int PASS = 0;
+	static final int TICKET = 1;
+	static final int DOUBLE = 2;
+	private static final int KIND_BITS = 2;
+	private static final int TICKET_BITS = 3;
+
+	private static final Colour[] COLOURS = Colour.values();
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int SLOTS = MoveGenerator.TICKET_SLOTS;
+
+	private final boolean[] rounds;
+	private final long fingerprint;
+	private final Colour[] colours;
+	private final int[] locations;
+	private final int[] tickets;
+	private final ByteBuffer moves;
+
+	private GameRecord(boolean[] rounds, long fingerprint, Colour[] colours, int[] locations,
+			int[] tickets, ByteBuffer moves) {
+		this.rounds = rounds;
+		this.fingerprint = fingerprint;
+		this.colours = colours;
+		this.locations = locations;
+		this.tickets = tickets;
+		this.moves = moves;
+	}
+
+	/**
+	 * Reads a record from the buffer's position up to its limit. The buffer is
+	 * not copied and its position is not changed.
+	 *
+	 * @param buffer the record; not null
+	 * @return the record; never null
+	 * @throws IllegalArgumentException if the buffer does not hold a record
+	 */
+	public static GameRecord read(ByteBuffer buffer) {
+		ByteBuffer in = buffer.duplicate();
+		try {
+			if (in.getInt() != MAGIC) throw new IllegalArgumentException("Not a game record");
+			int version = in.get();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Unsupported game record version " + version);
+			boolean[] rounds = new boolean[getVarint(in)];
+			for (int i = 0; i < rounds.length; i += 8) {
+				int bits = in.get();
+				for (int j = 0; j < 8 && i + j < rounds.length; j++)
+					rounds[i + j] = (bits & (1 << j)) != 0;
+			}
+			long fingerprint = in.getLong();
+			int players = in.get();
+			if (players <= 0) throw new IllegalArgumentException("No players");
+			Colour[] colours = new Colour[players];
+			int[] locations = new int[players];
+			int[] tickets = new int[players * SLOTS];
+			for (int i = 0; i < players; i++) {
+				int colour = in.get();
+				if (colour < 0 || colour >= COLOURS.length)
+					throw new IllegalArgumentException("Unknown colour " + colour);
+				colours[i] = COLOURS[colour];
+				locations[i] = getVarint(in);
+				for (int t = 0; t < SLOTS; t++)
+					tickets[i * SLOTS + t] = getVarint(in);
+			}
+			return new GameRecord(rounds, fingerprint, colours, locations, tickets, in.slice());
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Game record header cut short", e);
+		}
+	}
+
+	/**
+	 * Memory-maps a file holding one record
+	 *
+	 * @param path the file; not null
+	 * @return the record; never null
+	 * @throws IOException if the file cannot be read
+	 */
+	public static GameRecord map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	//================================HEADER===================================
+
+	/**
+	 * @return whether each round is a reveal round; never null
+	 */
+	public List<Boolean> rounds() {
+		List<Boolean> list = new ArrayList<>(rounds.length);
+		for (boolean round : rounds)
+			list.add(round);
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return the {@link IndexedGraph#fingerprint()} of the game's map
+	 */
+	public long fingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return the colours in order of play; never null
+	 */
+	public List<Colour> colours() {
+		return Collections.unmodifiableList(Arrays.asList(colours.clone()));
+	}
+
+	/**
+	 * @param index index of the player in order of play
+	 * @return the player's starting location
+	 */
+	public int location(int index) {
+		return locations[index];
+	}
+
+	/**
+	 * @param index index of the player in order of play
+	 * @param ticket the ticket; not null
+	 * @return the number of the ticket the player started with
+	 */
+	public int tickets(int index, Ticket ticket) {
+		return tickets[index * SLOTS + ticket.ordinal()];
+	}
+
+	/**
+	 * @return the size of the moves in bytes
+	 */
+	public int movesSize() {
+		return moves.remaining();
+	}
+
+	/**
+	 * Counts the moves without replaying them
+	 *
+	 * @return the number of moves, a double move counting as one
+	 * @throws IllegalArgumentException if the moves cannot be decoded
+	 */
+	public int moveCount() {
+		ByteBuffer in = moves.duplicate();
+		int count = 0;
+		try {
+			while (in.hasRemaining()) {
+				int code = getVarint(in);
+				if ((code & ((1 << KIND_BITS) - 1)) == DOUBLE) getVarint(in);
+				count++;
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Game record cut short", e);
+		}
+		return count;
+	}
+
+	//================================REPLAY===================================
+
+	/**
+	 * @param generator the move generator of the game's map; not null
+	 * @return the state the game started in; never null
+	 * @throws IllegalArgumentException if the generator is for another map
+	 */
+	public GameState start(MoveGenerator generator) {
+		if (generator.graph().fingerprint() != fingerprint)
+			throw new IllegalArgumentException("Game record is for another map");
+		return GameState.start(generator, rounds, colours, locations, tickets);
+	}
+
+	/**
+	 * @param generator the move generator of the game's map; not null
+	 * @return a replay at the start of the game; never null
+	 * @throws IllegalArgumentException if the generator is for another map
+	 */
+	public Replay replay(MoveGenerator generator) {
+		return new Replay(start(generator), moves.duplicate());
+	}
+
+	/**
+	 * Replays the first moves of the game
+	 *
+	 * @param generator the move generator of the game's map; not null
+	 * @param played the number of moves to play, at least 0
+	 * @return the state after those moves; never null
+	 * @throws IllegalArgumentException if the generator is for another map
+	 * @throws NoSuchElementException if the game has fewer moves
+	 */
+	public GameState positionAt(MoveGenerator generator, int played) {
+		if (played < 0) throw new IllegalArgumentException("played < 0");
+		Replay replay = replay(generator);
+		while (replay.played() < played)
+			replay.next();
+		return replay.state();
+	}
+
+	/**
+	 * Plays a recorded game move by move on a {@link GameState}. A double
+	 * move is one move.
+	 */
+	public static final class Replay {
+
+		private final GameState state;
+		private final ByteBuffer moves;
+		private int played;
+
+		private Replay(GameState state, ByteBuffer moves) {
+			this.state = state;
+			this.moves = moves;
+		}
+
+		/**
+		 * @return whether there is another move
+		 */
+		public boolean hasNext() {
+			return moves.hasRemaining();
+		}
+
+		/**
+		 * Plays the next move on the state
+		 *
+		 * @return the move; never null
+		 * @throws NoSuchElementException if there are no more moves
+		 * @throws IllegalArgumentException if the move cannot be decoded
+		 */
+		public Move next() {
+			if (!moves.hasRemaining()) throw new NoSuchElementException();
+			Move move;
+			try {
+				move = readMove(moves, state);
+			} catch (BufferUnderflowException e) {
+				throw new IllegalArgumentException("Game record cut short", e);
+			}
+			state.apply(move);
+			played++;
+			return move;
+		}
+
+		/**
+		 * @return the state after the moves played so far; live, it changes
+		 *         with every move
+		 */
+		public GameState state() {
+			return state;
+		}
+
+		/**
+		 * @return the number of moves played so far
+		 */
+		public int played() {
+			return played;
+		}
+	}
+
+	//================================ENCODING===================================
+
+	/**
+	 * Writes a move of the state's current player, before it is played
+	 */
+	static void writeMove(ByteBuffer out, Move move, GameState state) {
+		int location = state.locationAt(state.currentPlayer());
+		if (move instanceof TicketMove) {
+			putVarint(out, ticketCode((TicketMove) move, location, state.graph(), TICKET));
+		} else if (move instanceof DoubleMove) {
+			DoubleMove doubleMove = (DoubleMove) move;
+			putVarint(out, ticketCode(doubleMove.firstMove(), location, state.graph(), DOUBLE));
+			putVarint(out, ticketCode(doubleMove.secondMove(), doubleMove.firstMove().destination(),
+					state.graph(), TICKET));
+		} else {
+			putVarint(out, PASS);
+		}
+	}
+
+	/**
+	 * Reads a move of the state's current player, which is not played
+	 */
+	static Move readMove(ByteBuffer in, GameState state) {
+		Colour colour = state.colourAt(state.currentPlayer());
+		int location = state.locationAt(state.currentPlayer());
+		int code = getVarint(in);
+		int kind = code & ((1 << KIND_BITS) - 1);
+		if (code == PASS) return new PassMove(colour);
+		TicketMove first = ticketMove(colour, code, location, state.graph());
+		if (kind == TICKET) return first;
+		if (kind != DOUBLE) throw new IllegalArgumentException("Unknown move code " + code);
+		int second = getVarint(in);
+		if ((second & ((1 << KIND_BITS) - 1)) != TICKET)
+			throw new IllegalArgumentException("Unknown move code " + second);
+		return new DoubleMove(colour, first, ticketMove(colour, second, first.destination(),
+				state.graph()));
+	}
+
+	private static int ticketCode(TicketMove move, int location, IndexedGraph graph, int kind) {
+		int[] neighbours = neighbours(graph, location, move.ticket());
+		boolean found = false;
+		int rank = 0;
+		for (int neighbour : neighbours) {
+			if (neighbour == move.destination()) found = true;
+			else if (neighbour < move.destination()) rank++;
+		}
+		if (!found) throw new IllegalArgumentException(move + " does not leave " + location);
+		return ((rank << TICKET_BITS | move.ticket().ordinal()) << KIND_BITS) | kind;
+	}
+
+	private static TicketMove ticketMove(Colour colour, int code, int location, IndexedGraph graph) {
+		int ticket = (code >>> KIND_BITS) & ((1 << TICKET_BITS) - 1);
+		int rank = code >>> (KIND_BITS + TICKET_BITS);
+		if (ticket >= TICKETS.length || TICKETS[ticket] == Ticket.DOUBLE)
+			throw new IllegalArgumentException("Unknown move code " + code);
+		int[] neighbours = neighbours(graph, location, TICKETS[ticket]);
+		//neighbours are distinct, so exactly one has rank smaller neighbours; the lists are short enough to count
+		for (int neighbour : neighbours) {
+			int smaller = 0;
+			for (int other : neighbours)
+				if (other < neighbour) smaller++;
+			if (smaller == rank) return new TicketMove(colour, TICKETS[ticket], neighbour);
+		}
+		throw new IllegalArgumentException("Unknown move code " + code);
+	}
+
+	//the destinations a ticket can reach
+	private static int[] neighbours(IndexedGraph graph, int location, Ticket ticket) {
+		return ticket == Ticket.SECRET ? graph.neighbours(location)
+				: graph.neighbours(location, ticket.transport());
+	}
+
+	static void putVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	static int getVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IllegalArgumentException("Varint longer than 5 bytes");
+	}
+
+}
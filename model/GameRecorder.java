@@ -0,0 +1,242 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Records a game as a {@link GameRecord} into a channel, e.g. a
+ * {@link java.nio.channels.FileChannel}. The header is written from the
+ * players' configurations and every move as it is played.
+ *
+ * <br>
+ * The recorder is a {@link Spectator} of the game, but spectators are told a
+ * hidden location for Mr. X's moves; the moves recorded are the ones the
+ * players chose, which the recorder sees by wrapping the players. Play the
+ * game with {@link #configurations()} and register the recorder:
+ *
+ * <pre>
+ * GameRecorder recorder = new GameRecorder(channel, rounds, graph, configurations);
+ * List&lt;PlayerConfiguration&gt; recorded = recorder.configurations();
+ * ScotlandYardModel game = new ScotlandYardModel(rounds, graph, recorded.get(0), ...);
+ * game.registerSpectator(recorder);
+ * </pre>
+ *
+ * The record is kept in a buffer and written to the channel when the game is
+ * over, when the buffer fills up and on {@link #flush()}, so recording a game
+ * usually costs a single write. A record has no length and runs to the end
+ * of what is read, so a channel holds a single game; a {@link GameArchive}
+ * keeps many games with the length of each.
+ */
+public class GameRecorder implements Spectator {
+
+	/**
+	 * Smallest buffer a recorder accepts, enough for the header of any game
+	 * with up to a thousand rounds
+	 */
+	public static final int MIN_BUFFER = 512;
+
+	private static final int DEFAULT_BUFFER = 4096;
+	private static final int LARGEST_MOVE = 10;	//two varints of at most five bytes
+
+	private final WritableByteChannel channel;
+	private final GameState state;		//the game as recorded, to encode moves by neighbour rank
+	private final ByteBuffer buffer;
+	private final List<PlayerConfiguration> configurations;
+	private volatile Move chosen;		//last move a wrapped player chose, not recorded yet
+	private int halves;					//halves of a double move still to be announced
+	private int moves;
+	private IOException failure;		//why a move could not be recorded, null while the record is whole
+
+	/**
+	 * Creates a recorder and writes the header into its buffer
+	 *
+	 * @param channel the channel to write to; not null
+	 * @param rounds the rounds of the game; not null
+	 * @param graph the map of the game; not null
+	 * @param configurations the players in order of play, Mr. X first; not
+	 *        null
+	 */
+	public GameRecorder(WritableByteChannel channel, List<Boolean> rounds, IndexedGraph graph,
+			List<PlayerConfiguration> configurations) {
+		this(channel, rounds, new MoveGenerator(graph), configurations, DEFAULT_BUFFER);
+	}
+
+	/**
+	 * Creates a recorder and writes the header into its buffer
+	 *
+	 * @param channel the channel to write to; not null
+	 * @param rounds the rounds of the game; not null
+	 * @param generator the move generator of the game's map; not null
+	 * @param configurations the players in order of play, Mr. X first; not
+	 *        null
+	 * @param bufferSize the size of the buffer in bytes, at least
+	 *        {@link #MIN_BUFFER}
+	 */
+	public GameRecorder(WritableByteChannel channel, List<Boolean> rounds, MoveGenerator generator,
+			List<PlayerConfiguration> configurations, int bufferSize) {
+		this.channel = Objects.requireNonNull(channel);
+		if (bufferSize < MIN_BUFFER) throw new IllegalArgumentException("bufferSize < " + MIN_BUFFER);
+		if (configurations.isEmpty()) throw new IllegalArgumentException("No players");
+		boolean[] reveals = new boolean[rounds.size()];
+		for (int i = 0; i < reveals.length; i++)
+			reveals[i] = rounds.get(i);
+		Colour[] colours = new Colour[configurations.size()];
+		int[] locations = new int[colours.length];
+		int[] tickets = new int[colours.length * MoveGenerator.TICKET_SLOTS];
+		List<PlayerConfiguration> wrapped = new ArrayList<>();
+		for (int i = 0; i < colours.length; i++) {
+			PlayerConfiguration configuration = configurations.get(i);
+			colours[i] = configuration.colour;
+			locations[i] = configuration.location;
+			MoveGenerator.ticketCounts(configuration.tickets, tickets, i * MoveGenerator.TICKET_SLOTS);
+			wrapped.add(new PlayerConfiguration.Builder(configuration.colour)
+					.using(wrap(configuration.player))
+					.with(configuration.tickets)
+					.at(configuration.location)
+					.build());
+		}
+		this.state = GameState.start(generator, reveals, colours, locations, tickets);
+		this.configurations = Collections.unmodifiableList(wrapped);
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		writeHeader(reveals, generator.graph().fingerprint(), colours, locations, tickets);
+	}
+
+	private void writeHeader(boolean[] rounds, long fingerprint, Colour[] colours, int[] locations,
+			int[] tickets) {
+		buffer.putInt(GameRecord.MAGIC);
+		buffer.put((byte) GameRecord.VERSION);
+		GameRecord.putVarint(buffer, rounds.length);
+		for (int i = 0; i < rounds.length; i += 8) {
+			int bits = 0;
+			for (int j = 0; j < 8 && i + j < rounds.length; j++)
+				if (rounds[i + j]) bits |= 1 << j;
+			buffer.put((byte) bits);
+		}
+		buffer.putLong(fingerprint);
+		buffer.put((byte) colours.length);
+		for (int i = 0; i < colours.length; i++) {
+			buffer.put((byte) colours[i].ordinal());
+			GameRecord.putVarint(buffer, locations[i]);
+			for (int t = 0; t < MoveGenerator.TICKET_SLOTS; t++)
+				GameRecord.putVarint(buffer, tickets[i * MoveGenerator.TICKET_SLOTS + t]);
+		}
+	}
+
+	/**
+	 * @return the configurations given to the recorder with their players
+	 *         wrapped, to play the recorded game with; never null
+	 */
+	public List<PlayerConfiguration> configurations() {
+		return configurations;
+	}
+
+	/**
+	 * Wraps a player, so the recorder sees the moves it chooses
+	 *
+	 * @param player the player; not null
+	 * @return the wrapped player; never null
+	 */
+	public Player wrap(Player player) {
+		Objects.requireNonNull(player);
+		return (view, location, moves, callback) -> player.makeMove(view, location, moves,
+				move -> {
+					chosen = move;
+					callback.accept(move);
+				});
+	}
+
+	/**
+	 * Records the move of the current player, when a game is recorded without
+	 * being a spectator of it
+	 *
+	 * @param move the move; not null
+	 * @throws UncheckedIOException if the buffer is full and cannot be
+	 *         written; the move and any later one cannot be recorded then
+	 * @throws IllegalStateException if an earlier move could not be recorded
+	 */
+	public void record(Move move) {
+		checkWhole();
+		if (move.colour() != state.colourAt(state.currentPlayer()))
+			throw new IllegalArgumentException(move + " is not made by "
+					+ state.colourAt(state.currentPlayer()));
+		if (buffer.remaining() < LARGEST_MOVE) {
+			try {
+				flush();
+			} catch (UncheckedIOException e) {
+				failure = e.getCause();
+				throw e;
+			}
+		}
+		GameRecord.writeMove(buffer, move, state);
+		state.apply(move);
+		moves++;
+	}
+
+	/**
+	 * Writes what is buffered to the channel
+	 *
+	 * @throws UncheckedIOException if the channel cannot be written; what was
+	 *         not written stays buffered for the next flush
+	 * @throws IllegalStateException if a move could not be recorded
+	 */
+	public void flush() {
+		checkWhole();
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			buffer.compact();
+		}
+	}
+
+	private void checkWhole() {
+		if (failure != null) throw new IllegalStateException("A move could not be recorded", failure);
+	}
+
+	/**
+	 * @return the number of moves recorded, a double move counting as one
+	 */
+	public int moves() {
+		return moves;
+	}
+
+	/**
+	 * @throws IllegalStateException if the move is Mr. X's and his player was
+	 *         not wrapped by this recorder
+	 */
+	@Override
+	public void onMoveMade(ScotlandYardView view, Move move) {
+		if (move instanceof DoubleMove) {
+			halves = 2;
+		} else if (halves > 0) {
+			halves--;
+			return;
+		}
+		Move played = chosen;
+		chosen = null;
+		if (played == null || played.colour() != move.colour()) {
+			//spectators are told a hidden location for Mr. X, which cannot be recorded
+			if (move.colour().isMrX()) throw new IllegalStateException(
+					"Mr. X's player is not wrapped; play the game with configurations() or wrap(Player)");
+			//detectives are told their true moves, so an unwrapped detective is recorded as well
+			played = move;
+		}
+		record(played);
+	}
+
+	@Override
+	public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+		flush();
+	}
+
+}
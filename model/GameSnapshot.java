@@ -0,0 +1,175 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+/**
+ * An immutable copy of what a {@link ScotlandYardView} shows at one moment:
+ * the players' locations as the view reveals them, their tickets, the round,
+ * the current player and the winners. A snapshot can be read on any thread
+ * while the game goes on, and reading it never computes anything but the
+ * graph of a game on a {@link CompiledMap}, which the game builds the first
+ * time any view asks for it.
+ *
+ * <br>
+ * {@link ScotlandYardModel#snapshot()} creates one per state of the game and
+ * hands the same snapshot to every caller until the state changes; the
+ * model passes it to its spectators instead of itself after
+ * {@link ScotlandYardModel#setSpectatorSnapshots(boolean)}. The graph, the
+ * indexed graph and the rounds are shared with the game rather than copied,
+ * as they do not change during a game; the model copies the rounds once when
+ * it is created, and a snapshot of any other view copies them.
+ */
+public final class GameSnapshot implements ScotlandYardView {
+
+	private static final Colour[] COLOURS = Colour.values();
+	private static final int SLOTS = MoveGenerator.TICKET_SLOTS;
+
+	private final List<Colour> players;
+	private final int[] locations;		//per colour ordinal, -1 if the view has none
+	private final int[] tickets;		//SLOTS per colour ordinal, -1 if the view has none
+	private final Colour currentPlayer;
+	private final int currentRound;
+	private final boolean gameOver;
+	private final Set<Colour> winningPlayers;
+	private final List<Boolean> rounds;
+	private final Supplier<Graph<Integer, Transport>> graph;
+	private final IndexedGraph indexedGraph;
+
+	/**
+	 * Copies any view through its methods
+	 */
+	private GameSnapshot(ScotlandYardView view) {
+		this(Collections.unmodifiableList(new ArrayList<>(view.getPlayers())), locations(view),
+				tickets(view), view.getCurrentPlayer(), view.getCurrentRound(), view.isGameOver(),
+				view.getWinningPlayers(), Collections.unmodifiableList(new ArrayList<>(view.getRounds())),
+				fixed(view.getGraph()), view.getIndexedGraph());
+	}
+
+	private static Supplier<Graph<Integer, Transport>> fixed(Graph<Integer, Transport> graph) {
+		return () -> graph;
+	}
+
+	/**
+	 * Creates a snapshot from copies the caller made; the arrays and the
+	 * players are kept, the winners are copied, and the graph is asked for
+	 * whenever the snapshot's is
+	 */
+	GameSnapshot(List<Colour> players, int[] locations, int[] tickets, Colour currentPlayer,
+			int currentRound, boolean gameOver, Set<Colour> winningPlayers, List<Boolean> rounds,
+			Supplier<Graph<Integer, Transport>> graph, IndexedGraph indexedGraph) {
+		this.players = players;
+		this.locations = locations;
+		this.tickets = tickets;
+		this.currentPlayer = currentPlayer;
+		this.currentRound = currentRound;
+		this.gameOver = gameOver;
+		this.winningPlayers = Collections.unmodifiableSet(winningPlayers.isEmpty()
+				? EnumSet.noneOf(Colour.class) : EnumSet.copyOf(winningPlayers));
+		this.rounds = rounds;
+		this.graph = graph;
+		this.indexedGraph = indexedGraph;
+	}
+
+	/**
+	 * @param view the view; not null
+	 * @return the view itself if it is a snapshot, the model's current
+	 *         snapshot if it is a {@link ScotlandYardModel}, a copy otherwise;
+	 *         never null
+	 */
+	public static GameSnapshot of(ScotlandYardView view) {
+		if (view instanceof GameSnapshot) return (GameSnapshot) view;
+		if (view instanceof ScotlandYardModel) return ((ScotlandYardModel) view).snapshot();
+		return new GameSnapshot(view);
+	}
+
+	private static int[] locations(ScotlandYardView view) {
+		int[] locations = new int[COLOURS.length];
+		for (Colour colour : COLOURS)
+			locations[colour.ordinal()] = view.getPlayerLocation(colour).orElse(-1);
+		return locations;
+	}
+
+	private static int[] tickets(ScotlandYardView view) {
+		int[] tickets = new int[COLOURS.length * SLOTS];
+		Arrays.fill(tickets, -1);
+		for (Colour colour : view.getPlayers())
+			for (Ticket ticket : Ticket.values())
+				tickets[colour.ordinal() * SLOTS + ticket.ordinal()] =
+						view.getPlayerTickets(colour, ticket).orElse(-1);
+		return tickets;
+	}
+
+	@Override
+	public List<Colour> getPlayers() {
+		return players;
+	}
+
+	@Override
+	public Set<Colour> getWinningPlayers() {
+		return winningPlayers;
+	}
+
+	@Override
+	public Optional<Integer> getPlayerLocation(Colour colour) {
+		if (colour == null) return Optional.empty();
+		int location = locations[colour.ordinal()];
+		return location < 0 ? Optional.empty() : Optional.of(location);
+	}
+
+	@Override
+	public Optional<Integer> getPlayerTickets(Colour colour, Ticket ticket) {
+		if (colour == null) return Optional.empty();
+		int count = tickets[colour.ordinal() * SLOTS + ticket.ordinal()];
+		return count < 0 ? Optional.empty() : Optional.of(count);
+	}
+
+	@Override
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	@Override
+	public Colour getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	@Override
+	public int getCurrentRound() {
+		return currentRound;
+	}
+
+	@Override
+	public List<Boolean> getRounds() {
+		return rounds;
+	}
+
+	@Override
+	public Graph<Integer, Transport> getGraph() {
+		return graph.get();
+	}
+
+	@Override
+	public IndexedGraph getIndexedGraph() {
+		return indexedGraph;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("GameSnapshot{round=").append(currentRound)
+				.append(", current=").append(currentPlayer);
+		for (Colour colour : players)
+			builder.append(", ").append(colour).append('@').append(locations[colour.ordinal()]);
+		if (gameOver) builder.append(", winners=").append(winningPlayers);
+		return builder.append('}').toString();
+	}
+
+}
@@ -0,0 +1,525 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.DOUBLE;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compact, mutable encoding of the state of a Scotland Yard game meant for
+ * search. Locations and ticket counts are kept in primitive arrays indexed by
+ * the order of play, and moves can be applied and undone without allocating.
+ *
+ * <br>
+ * Moves are always made by the current player and follow the same rules as
+ * {@link ScotlandYardModel}: tickets used by detectives are given to MrX, a
+ * move of MrX starts a new round and MrX's location is revealed in reveal
+ * rounds. Unlike a {@link ScotlandYardView}, the state knows MrX's actual
+ * location.
+ *
+ * <br>
+ * The state also keeps a {@link Zobrist} hash of the player locations, ticket
+ * counts, side to move and round, which is updated incrementally with every
+ * move so identical positions reached through different move orders can be
+ * recognised.
+ */
+public final class GameState implements MoveVisitor {
+
+	private static final int SLOTS = MoveGenerator.TICKET_SLOTS;
+	private static final int FRAME = 2; // previous location, previous revealed location
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final MoveGenerator generator;
+	private final boolean[] rounds;
+	private final Colour[] colours;
+	private final int[] indexOf; // colour ordinal -> index in order of play, -1 if not playing
+
+	private final int[] locations;
+	private final int[] tickets;
+	private final BitSet detectiveLocations = new BitSet();
+	private int currentPlayer;
+	private int currentRound;
+	private int revealedLocation;
+	private long hash;
+
+	private int[] history;
+	private long[] hashes;
+	private int depth;
+	private boolean undoing;
+
+	private GameState(MoveGenerator generator, boolean[] rounds, Colour[] colours) {
+		this.generator = Objects.requireNonNull(generator);
+		this.rounds = rounds;
+		this.colours = colours;
+		this.indexOf = new int[Colour.values().length];
+		Arrays.fill(indexOf, -1);
+		for (int i = 0; i < colours.length; i++)
+			indexOf[colours[i].ordinal()] = i;
+		this.locations = new int[colours.length];
+		this.tickets = new int[colours.length * SLOTS];
+		this.history = new int[(rounds.length + 1) * colours.length * FRAME];
+		this.hashes = new long[history.length / FRAME];
+	}
+
+	/**
+	 * Creates a state from a view of a game. Since a view only tells MrX's
+	 * last known location, his actual location has to be given separately.
+	 *
+	 * @param view the view of the game; not null
+	 * @param generator the move generator for the game's graph; not null
+	 * @param mrXLocation MrX's actual (or assumed) location
+	 * @return the state; never null
+	 */
+	public static GameState fromView(ScotlandYardView view, MoveGenerator generator,
+			int mrXLocation) {
+		List<Colour> players = view.getPlayers();
+		List<Boolean> viewRounds = view.getRounds();
+		boolean[] rounds = new boolean[viewRounds.size()];
+		for (int i = 0; i < rounds.length; i++)
+			rounds[i] = viewRounds.get(i);
+
+		GameState state = new GameState(generator, rounds, players.toArray(new Colour[0]));
+		for (int i = 0; i < state.colours.length; i++) {
+			Colour colour = state.colours[i];
+			for (Ticket ticket : TICKETS)
+				state.tickets[i * SLOTS + ticket.ordinal()] =
+						view.getPlayerTickets(colour, ticket).orElse(0);
+			if (colour.isDetective()) {
+				state.locations[i] = view.getPlayerLocation(colour).orElse(0);
+				state.detectiveLocations.set(state.locations[i]);
+			}
+		}
+		state.locations[0] = mrXLocation;
+		state.revealedLocation = view.getPlayerLocation(BLACK).orElse(0);
+		state.currentPlayer = state.indexOf[view.getCurrentPlayer().ordinal()];
+		state.currentRound = view.getCurrentRound();
+		state.hash = state.computeHash();
+		return state;
+	}
+
+	/**
+	 * Creates a state from a view of a game, assuming MrX is at his last
+	 * known location
+	 *
+	 * @param view the view of the game; not null
+	 * @param generator the move generator for the game's graph; not null
+	 * @return the state; never null
+	 */
+	public static GameState fromView(ScotlandYardView view, MoveGenerator generator) {
+		return fromView(view, generator, view.getPlayerLocation(BLACK).orElse(0));
+	}
+
+	/**
+	 * Creates the state of a game that has not started: MrX is to move in the
+	 * first round and his location has not been revealed
+	 *
+	 * @param generator the move generator for the game's graph; not null
+	 * @param rounds whether each round is a reveal round; not null, not
+	 *        modified
+	 * @param colours the colours in order of play, MrX first; not null
+	 * @param locations the locations in order of play; not null
+	 * @param tickets {@link MoveGenerator#TICKET_SLOTS} ticket counts per
+	 *        player in order of play; not null
+	 * @return the state; never null
+	 */
+	public static GameState start(MoveGenerator generator, boolean[] rounds, Colour[] colours,
+			int[] locations, int[] tickets) {
+		if (colours.length == 0 || colours[0] != BLACK)
+			throw new IllegalArgumentException("MrX must play first");
+		if (locations.length != colours.length || tickets.length != colours.length * SLOTS)
+			throw new IllegalArgumentException("Locations or tickets do not match the colours");
+		GameState state = new GameState(generator, rounds.clone(), colours.clone());
+		System.arraycopy(locations, 0, state.locations, 0, locations.length);
+		System.arraycopy(tickets, 0, state.tickets, 0, tickets.length);
+		for (int i = 1; i < colours.length; i++)
+			state.detectiveLocations.set(locations[i]);
+		state.hash = state.computeHash();
+		return state;
+	}
+
+	/**
+	 * Creates an independent copy of this state sharing only the immutable
+	 * parts, the undo history is not copied
+	 *
+	 * @return the copy; never null
+	 */
+	public GameState copy() {
+		GameState copy = new GameState(generator, rounds, colours);
+		System.arraycopy(locations, 0, copy.locations, 0, locations.length);
+		System.arraycopy(tickets, 0, copy.tickets, 0, tickets.length);
+		copy.detectiveLocations.or(detectiveLocations);
+		copy.currentPlayer = currentPlayer;
+		copy.currentRound = currentRound;
+		copy.revealedLocation = revealedLocation;
+		copy.hash = hash;
+		return copy;
+	}
+
+	//================================STATE ACCESS====================================
+
+	/**
+	 * @return the number of players in the game
+	 */
+	public int playerCount() {
+		return colours.length;
+	}
+
+	/**
+	 * @param index index of the player in the order of play
+	 * @return the colour of the player; never null
+	 */
+	public Colour colourAt(int index) {
+		return colours[index];
+	}
+
+	/**
+	 * @param colour the colour of a player; not null
+	 * @return index of the player in the order of play, -1 if the colour is
+	 *         not playing
+	 */
+	public int indexOf(Colour colour) {
+		return indexOf[colour.ordinal()];
+	}
+
+	/**
+	 * @param index index of the player in the order of play
+	 * @return the actual location of the player
+	 */
+	public int locationAt(int index) {
+		return locations[index];
+	}
+
+	/**
+	 * @param index index of the player in the order of play
+	 * @param ticket the ticket; not null
+	 * @return the number of tickets the player has
+	 */
+	public int ticketsAt(int index, Ticket ticket) {
+		return tickets[index * SLOTS + ticket.ordinal()];
+	}
+
+	/**
+	 * @return index of the player whose turn it is
+	 */
+	public int currentPlayer() {
+		return currentPlayer;
+	}
+
+	/**
+	 * @return the number of moves MrX has played, see
+	 *         {@link ScotlandYardView#getCurrentRound()}
+	 */
+	public int currentRound() {
+		return currentRound;
+	}
+
+	/**
+	 * @return the maximum number of rounds of the game
+	 */
+	public int roundCount() {
+		return rounds.length;
+	}
+
+	/**
+	 * @return MrX's last revealed location, 0 if he has never been revealed
+	 */
+	public int revealedLocation() {
+		return revealedLocation;
+	}
+
+	/**
+	 * @return the Zobrist hash of the position, see {@link Zobrist}
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	/**
+	 * Computes the Zobrist hash of the position from scratch, {@link #hash()}
+	 * always equals this value
+	 *
+	 * @return the hash of the position
+	 */
+	public long computeHash() {
+		long value = Zobrist.toMove(colours[currentPlayer]) ^ Zobrist.round(currentRound);
+		for (int i = 0; i < colours.length; i++) {
+			value ^= Zobrist.location(colours[i], locations[i]);
+			for (Ticket ticket : TICKETS)
+				value ^= Zobrist.tickets(colours[i], ticket, tickets[i * SLOTS + ticket.ordinal()]);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the locations occupied by detectives; must not be modified
+	 */
+	public BitSet detectiveLocations() {
+		return detectiveLocations;
+	}
+
+	//================================MOVE GENERATION=================================
+
+	/**
+	 * Generates the valid moves of the current player
+	 *
+	 * @param sink the sink receiving the moves; not null
+	 */
+	public void generate(MoveSink sink) {
+		generate(sink, true);
+	}
+
+	/**
+	 * Generates the valid moves of the current player, optionally leaving out
+	 * MrX's double moves, e.g. for fast random playouts
+	 *
+	 * @param sink the sink receiving the moves; not null
+	 * @param doubleMoves whether to generate double moves
+	 */
+	public void generate(MoveSink sink, boolean doubleMoves) {
+		int roundsRemaining = rounds.length - currentRound;
+		generator.generate(colours[currentPlayer], locations[currentPlayer], tickets,
+				currentPlayer * SLOTS, detectiveLocations,
+				doubleMoves ? roundsRemaining : Math.min(roundsRemaining, 1), sink);
+	}
+
+	/**
+	 * @return the graph the state's moves are generated on; never null
+	 */
+	public IndexedGraph graph() {
+		return generator.graph();
+	}
+
+	/**
+	 * @return true if MrX is captured or cannot move on his turn
+	 */
+	public boolean detectivesWin() {
+		if (detectiveLocations.get(locations[0])) return true;
+		return currentPlayer == 0
+				&& !generator.hasTicketMove(locations[0], tickets, 0, detectiveLocations);
+	}
+
+	/**
+	 * @return true if all detectives are stuck or MrX survived the last round
+	 */
+	public boolean mrXWins() {
+		if (currentRound == rounds.length && currentPlayer == 0) return true;
+		for (int i = 1; i < colours.length; i++)
+			if (generator.hasTicketMove(locations[i], tickets, i * SLOTS, detectiveLocations))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return true when the game is over, see
+	 *         {@link ScotlandYardView#isGameOver()}
+	 */
+	public boolean isGameOver() {
+		return detectivesWin() || mrXWins();
+	}
+
+	//================================MAKE / UNMAKE===================================
+
+	/**
+	 * Plays a move of the current player
+	 *
+	 * @param move the move; not null, must be made by the current player
+	 */
+	public void apply(Move move) {
+		requireCurrent(move);
+		undoing = false;
+		move.visit(this);
+	}
+
+	/**
+	 * Takes back the last move played, which must be the given move
+	 *
+	 * @param move the move; not null
+	 */
+	public void undo(Move move) {
+		if (depth == 0) throw new IllegalStateException("No move to undo");
+		undoing = true;
+		move.visit(this);
+	}
+
+	private void requireCurrent(Move move) {
+		if (move.colour() != colours[currentPlayer])
+			throw new IllegalArgumentException(move + " is not made by " + colours[currentPlayer]);
+	}
+
+	@Override
+	public void visit(PassMove move) {
+		if (undoing) undoPass();
+		else playPass();
+	}
+
+	@Override
+	public void visit(TicketMove move) {
+		if (undoing) undoTicket(move.ticket());
+		else playTicket(move.ticket(), move.destination());
+	}
+
+	@Override
+	public void visit(DoubleMove move) {
+		if (undoing) undoDouble(move.firstMove().ticket(), move.secondMove().ticket());
+		else playDouble(move.firstMove().ticket(), move.firstMove().destination(),
+				move.secondMove().ticket(), move.secondMove().destination());
+	}
+
+	/**
+	 * Plays a pass move for the current player
+	 */
+	public void playPass() {
+		push();
+		advancePlayer();
+	}
+
+	/**
+	 * Plays a ticket move for the current player
+	 *
+	 * @param ticket the ticket used; not null
+	 * @param destination the destination of the move
+	 */
+	public void playTicket(Ticket ticket, int destination) {
+		push();
+		int player = currentPlayer;
+		moveTo(player, destination);
+		addTickets(player, ticket, -1);
+		if (player == 0) {
+			if (rounds[currentRound]) revealedLocation = destination;
+			setRound(currentRound + 1);
+		} else {
+			addTickets(0, ticket, 1); //detective tickets are given to MrX
+		}
+		advancePlayer();
+	}
+
+	/**
+	 * Plays a double move for MrX, who must be the current player
+	 *
+	 * @param first the ticket used for the first move; not null
+	 * @param firstDestination the destination of the first move
+	 * @param second the ticket used for the second move; not null
+	 * @param secondDestination the destination of the second move
+	 */
+	public void playDouble(Ticket first, int firstDestination, Ticket second,
+			int secondDestination) {
+		push();
+		moveTo(0, secondDestination);
+		addTickets(0, DOUBLE, -1);
+		addTickets(0, first, -1);
+		addTickets(0, second, -1);
+		if (rounds[currentRound]) revealedLocation = firstDestination;
+		if (rounds[currentRound + 1]) revealedLocation = secondDestination;
+		setRound(currentRound + 2);
+		advancePlayer();
+	}
+
+	/**
+	 * Takes back a pass move
+	 */
+	public void undoPass() {
+		retreatPlayer();
+		pop();
+	}
+
+	/**
+	 * Takes back a ticket move
+	 *
+	 * @param ticket the ticket that was used; not null
+	 */
+	public void undoTicket(Ticket ticket) {
+		retreatPlayer();
+		int player = currentPlayer;
+		addTickets(player, ticket, 1);
+		if (player == 0) setRound(currentRound - 1);
+		else addTickets(0, ticket, -1);
+		moveTo(player, history[depth - FRAME]);
+		pop();
+	}
+
+	/**
+	 * Takes back a double move
+	 *
+	 * @param first the ticket that was used for the first move; not null
+	 * @param second the ticket that was used for the second move; not null
+	 */
+	public void undoDouble(Ticket first, Ticket second) {
+		retreatPlayer();
+		addTickets(0, DOUBLE, 1);
+		addTickets(0, first, 1);
+		addTickets(0, second, 1);
+		setRound(currentRound - 2);
+		moveTo(0, history[depth - FRAME]);
+		pop();
+	}
+
+	private void moveTo(int player, int destination) {
+		if (player != 0) {
+			detectiveLocations.clear(locations[player]);
+			detectiveLocations.set(destination);
+		}
+		hash ^= Zobrist.location(colours[player], locations[player])
+				^ Zobrist.location(colours[player], destination);
+		locations[player] = destination;
+	}
+
+	private void addTickets(int player, Ticket ticket, int by) {
+		int slot = player * SLOTS + ticket.ordinal();
+		hash ^= Zobrist.tickets(colours[player], ticket, tickets[slot])
+				^ Zobrist.tickets(colours[player], ticket, tickets[slot] + by);
+		tickets[slot] += by;
+	}
+
+	private void setRound(int round) {
+		hash ^= Zobrist.round(currentRound) ^ Zobrist.round(round);
+		currentRound = round;
+	}
+
+	private void advancePlayer() {
+		setPlayer(currentPlayer + 1 == colours.length ? 0 : currentPlayer + 1);
+	}
+
+	private void retreatPlayer() {
+		setPlayer(currentPlayer == 0 ? colours.length - 1 : currentPlayer - 1);
+	}
+
+	private void setPlayer(int player) {
+		hash ^= Zobrist.toMove(colours[currentPlayer]) ^ Zobrist.toMove(colours[player]);
+		currentPlayer = player;
+	}
+
+	private void push() {
+		if (depth + FRAME > history.length) {
+			history = Arrays.copyOf(history, history.length * 2);
+			hashes = Arrays.copyOf(hashes, hashes.length * 2);
+		}
+		history[depth] = locations[currentPlayer];
+		history[depth + 1] = revealedLocation;
+		hashes[depth / FRAME] = hash;
+		depth += FRAME;
+	}
+
+	private void pop() {
+		depth -= FRAME;
+		revealedLocation = history[depth + 1];
+		hash = hashes[depth / FRAME];
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("GameState{");
+		sb.append("colours=").append(Arrays.toString(colours));
+		sb.append(", locations=").append(Arrays.toString(locations));
+		sb.append(", tickets=").append(Arrays.toString(tickets));
+		sb.append(", currentPlayer=").append(currentPlayer);
+		sb.append(", currentRound=").append(currentRound);
+		sb.append(", revealedLocation=").append(revealedLocation);
+		sb.append(", hash=").append(Long.toHexString(hash));
+		sb.append('}');
+		return sb.toString();
+	}
+
+}
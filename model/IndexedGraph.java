@@ -0,0 +1,263 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.Node;
+
+/**
+ * A read-only, array backed index of a Scotland Yard map. Nodes are
+ * addressed by their value, and the distinct neighbours of a node are
+ * precomputed per {@link Transport} and over all transports, so adjacency
+ * lookups are constant time array accesses.
+ *
+ * <br>
+ * Arrays returned by this class are shared and must not be modified.
+ */
+public final class IndexedGraph {
+
+	private static final int[] EMPTY = new int[0];
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final int[] nodes;
+	private final boolean[] contained;
+	private final int[][][] byTransport; // [transport][node] -> distinct destinations
+	private final int[][] anyTransport;  // [node] -> distinct destinations over all transports
+	private final int edgeCount;
+	private final long fingerprint;
+
+	/**
+	 * Indexes the given graph
+	 *
+	 * @param graph the graph to index; not null, node values must not be
+	 *        negative
+	 */
+	public IndexedGraph(Graph<Integer, Transport> graph) {
+		Objects.requireNonNull(graph);
+		List<Node<Integer>> graphNodes = graph.getNodes();
+		nodes = new int[graphNodes.size()];
+		int maxNode = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = graphNodes.get(i).value();
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative node " + nodes[i]);
+			maxNode = Math.max(maxNode, nodes[i]);
+		}
+
+		contained = new boolean[maxNode + 1];
+		byTransport = new int[TRANSPORTS.length][maxNode + 1][];
+		anyTransport = new int[maxNode + 1][];
+		for (int[][] table : byTransport)
+			Arrays.fill(table, EMPTY);
+		Arrays.fill(anyTransport, EMPTY);
+
+		int edges = 0;
+		long fingerprint = nodes.length;
+		List<Set<Integer>> lanes = new ArrayList<>();
+		for (Node<Integer> node : graphNodes) {
+			lanes.clear();
+			for (int i = 0; i < TRANSPORTS.length; i++)
+				lanes.add(new LinkedHashSet<>());
+			Set<Integer> any = new LinkedHashSet<>();
+			for (Edge<Integer, Transport> edge : graph.getEdgesFrom(node)) {
+				if (lanes.get(edge.data().ordinal()).add(edge.destination().value()))
+					fingerprint += mix(node.value(), edge.destination().value(), edge.data());
+				any.add(edge.destination().value());
+				edges += 1;
+			}
+			fingerprint += mix(node.value(), node.value(), null);
+			for (int i = 0; i < TRANSPORTS.length; i++)
+				byTransport[i][node.value()] = toArray(lanes.get(i));
+			anyTransport[node.value()] = toArray(any);
+			contained[node.value()] = true;
+		}
+		this.edgeCount = edges;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Indexes a compiled map straight from its adjacency arrays, without
+	 * building a {@link Graph} first. The result is the same as indexing
+	 * {@link CompiledMap#toGraph()}, except that neighbours are in the order
+	 * of the compiled map.
+	 *
+	 * @param map the compiled map; not null
+	 */
+	public IndexedGraph(CompiledMap map) {
+		Objects.requireNonNull(map);
+		nodes = new int[map.nodeCount()];
+		int maxNode = 0;
+		int maxDegree = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = map.node(i);
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative node " + nodes[i]);
+			maxNode = Math.max(maxNode, nodes[i]);
+			maxDegree = Math.max(maxDegree, map.endEdge(i) - map.firstEdge(i));
+		}
+
+		contained = new boolean[maxNode + 1];
+		byTransport = new int[TRANSPORTS.length][maxNode + 1][];
+		anyTransport = new int[maxNode + 1][];
+		for (int[][] table : byTransport)
+			Arrays.fill(table, EMPTY);
+		Arrays.fill(anyTransport, EMPTY);
+
+		long fingerprint = nodes.length;
+		int[] scratch = new int[maxDegree];
+		for (int i = 0; i < nodes.length; i++) {
+			int node = nodes[i];
+			for (Transport transport : TRANSPORTS) {
+				int[] lane = distinct(map, i, transport, scratch);
+				for (int destination : lane)
+					fingerprint += mix(node, destination, transport);
+				byTransport[transport.ordinal()][node] = lane;
+			}
+			fingerprint += mix(node, node, null);
+			anyTransport[node] = distinct(map, i, null, scratch);
+			contained[node] = true;
+		}
+		this.edgeCount = map.edgeCount();
+		this.fingerprint = fingerprint;
+	}
+
+	// distinct destinations of the edges leaving the node at index, in edge order; any transport if null
+	private static int[] distinct(CompiledMap map, int index, Transport transport, int[] scratch) {
+		int count = 0;
+		for (int edge = map.firstEdge(index); edge < map.endEdge(index); edge++) {
+			if (transport != null && map.transport(edge) != transport) continue;
+			int destination = map.node(map.destinationIndex(edge));
+			if (!contains(scratch, count, destination)) scratch[count++] = destination;
+		}
+		return count == 0 ? EMPTY : Arrays.copyOf(scratch, count);
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++)
+			if (values[i] == value) return true;
+		return false;
+	}
+
+	// order independent, so the same map always gets the same fingerprint however it was read
+	private static long mix(int source, int destination, Transport transport) {
+		long z = ((long) source << 32 | destination) * 0x9E37_79B9_7F4A_7C15L
+				+ (transport == null ? 0 : transport.ordinal() + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int[] toArray(Set<Integer> values) {
+		if (values.isEmpty()) return EMPTY;
+		int[] array = new int[values.size()];
+		int i = 0;
+		for (int value : values)
+			array[i++] = value;
+		return array;
+	}
+
+	/**
+	 * @return the number of nodes in the graph
+	 */
+	public int nodeCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return the number of directed edges in the graph, an undirected edge
+	 *         counts twice
+	 */
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * A 64 bit fingerprint of the nodes and edges of the graph. Graphs with
+	 * the same nodes and edges have the same fingerprint, regardless of the
+	 * order they were added in.
+	 *
+	 * @return the fingerprint
+	 */
+	public long fingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Whether another graph is this one or a graph of the same map, e.g. an
+	 * index a view built again; judged by {@link #fingerprint()}, node count
+	 * and edge count
+	 *
+	 * @param other the other graph; may be null
+	 * @return true if the graphs have the same nodes and edges
+	 */
+	public boolean sameMap(IndexedGraph other) {
+		return other == this || other != null && other.fingerprint == fingerprint
+				&& other.nodes.length == nodes.length && other.edgeCount == edgeCount;
+	}
+
+	/**
+	 * @return the largest node value; arrays indexed by node value need one
+	 *         more slot than this
+	 */
+	public int maxNode() {
+		return anyTransport.length - 1;
+	}
+
+	/**
+	 * @param index index of the node, zero or greater and less than
+	 *        {@link #nodeCount()}
+	 * @return the value of the node in the graph's order
+	 */
+	public int node(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * @param node a node value
+	 * @return true if the graph contains the node, false otherwise
+	 */
+	public boolean contains(int node) {
+		return node >= 0 && node < contained.length && contained[node];
+	}
+
+	/**
+	 * Distinct destinations reachable from a node with a given transport
+	 *
+	 * @param node a node value between zero and {@link #maxNode()}
+	 * @param transport the transport; not null
+	 * @return the destinations; shared, never null
+	 */
+	public int[] neighbours(int node, Transport transport) {
+		return byTransport[transport.ordinal()][node];
+	}
+
+	/**
+	 * Distinct destinations reachable from a node with any transport
+	 *
+	 * @param node a node value between zero and {@link #maxNode()}
+	 * @return the destinations; shared, never null
+	 */
+	public int[] neighbours(int node) {
+		return anyTransport[node];
+	}
+
+	/**
+	 * Whether there is an edge of the given transport between two nodes
+	 *
+	 * @param source the source node
+	 * @param destination the destination node
+	 * @param transport the transport; not null
+	 * @return true if the edge exists, false otherwise
+	 */
+	public boolean isEdge(int source, int destination, Transport transport) {
+		if (!contains(source)) return false;
+		for (int value : byTransport[transport.ordinal()][source])
+			if (value == destination) return true;
+		return false;
+	}
+
+}
@@ -0,0 +1,32 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+/**
+ * Receives the time the model spends on its own work, see
+ * {@link ScotlandYardModel#setTimer(ModelTimer)}. The methods are called on
+ * the thread playing the game, once per move generation or win check.
+ *
+ * <br>
+ * A model timed by {@link #NONE} does not read the clock at all.
+ */
+public interface ModelTimer {
+
+	/**
+	 * Timer ignoring every time; the model is not timed with it
+	 */
+	ModelTimer NONE = new ModelTimer() {};
+
+	/**
+	 * Called after the valid moves of a player were generated
+	 *
+	 * @param nanos the time generating them took, in nanoseconds
+	 */
+	default void onMovesGenerated(long nanos) {}
+
+	/**
+	 * Called after the model checked whether the game is over
+	 *
+	 * @param nanos the time the check took, in nanoseconds
+	 */
+	default void onWinChecked(long nanos) {}
+
+}
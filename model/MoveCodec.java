@@ -0,0 +1,383 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Encodes moves compactly, without Java serialization: as a single
+ * {@code long}, or as a few bytes in a {@link ByteBuffer}.
+ *
+ * <br>
+ * The bits of an encoded move, least significant first, are
+ * <ul>
+ * <li>the kind of move (2 bits): 0 for a pass, 1 for a ticket move, 2 for a
+ * double move</li>
+ * <li>the ordinal of the (first) ticket (3 bits) and the (first)
+ * destination (24 bits)</li>
+ * <li>for a double move, the ordinal of the second ticket (3 bits) and the
+ * second destination (24 bits)</li>
+ * <li>the ordinal of the colour (3 bits), from bit {@link #COLOUR_SHIFT}</li>
+ * </ul>
+ * so Mr. X's pass is 0 and a move is a single {@code long} compare. The
+ * bytes of a move are a varint of its colour, kind, first ticket and first
+ * destination, followed by a varint of its second ticket and destination if
+ * it is a double move; most moves take three bytes, none more than
+ * {@link #MAX_BYTES}. Varints are unsigned, in groups of seven bits, least
+ * significant first, as in {@link GameRecord}.
+ *
+ * <br>
+ * Decoded pass and ticket moves are interned: decoding the same move twice
+ * gives the same instance, and a decoded double move is made of interned
+ * ticket moves. Moves are immutable, so the interned moves are shared by all
+ * threads.
+ */
+public final class MoveCodec {
+
+	/**
+	 * The most bytes {@link #write(ByteBuffer, Move)} puts for a move
+	 */
+	public static final int MAX_BYTES = 9;
+
+	/**
+	 * The lowest bit of the colour's ordinal in an encoded move
+	 */
+	public static final int COLOUR_SHIFT = 56;
+
+	/**
+	 * The {@link #kind(long)} of a pass
+	 */
+	public static final int PASS = 0;
+
+	/**
+	 * The {@link #kind(long)} of a ticket move
+	 */
+	public static final int TICKET_MOVE = 1;
+
+	/**
+	 * The {@link #kind(long)} of a double move
+	 */
+	public static final int DOUBLE_MOVE = 2;
+
+	private static final int LOCATION_BITS = 24;
+	private static final int LOCATION_MASK = (1 << LOCATION_BITS) - 1;
+	private static final int HALF_BITS = 3 + LOCATION_BITS;	//a ticket and its destination
+	private static final int FIRST_BITS = 2 + HALF_BITS;		//the kind and the first half
+	private static final long FIRST_MASK = (1L << FIRST_BITS) - 1;
+	private static final Colour[] COLOURS = Colour.values();
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	//interned ticket moves to locations below INTERNED, indexed by colour and ticket, then destination
+	private static final int INTERNED = 256;
+	private static final TicketMove[][] TICKET_MOVES = new TicketMove[COLOURS.length * TICKETS.length][INTERNED];
+	private static final PassMove[] PASS_MOVES = new PassMove[COLOURS.length];
+
+	static {
+		for (Colour colour : COLOURS)
+			PASS_MOVES[colour.ordinal()] = new PassMove(colour);
+	}
+
+	private MoveCodec() {}
+
+	/**
+	 * @param move the move; not null
+	 * @return the move as a {@code long}
+	 * @throws IllegalArgumentException if a destination does not fit in 24
+	 *         bits
+	 */
+	public static long encode(Move move) {
+		Objects.requireNonNull(move);
+		if (move instanceof TicketMove) {
+			TicketMove ticketMove = (TicketMove) move;
+			return encodeTicket(move.colour(), ticketMove.ticket(), ticketMove.destination());
+		}
+		if (move instanceof DoubleMove) {
+			DoubleMove doubleMove = (DoubleMove) move;
+			return encodeDouble(move.colour(), doubleMove.firstMove().ticket(),
+					doubleMove.firstMove().destination(), doubleMove.secondMove().ticket(),
+					doubleMove.secondMove().destination());
+		}
+		return encodePass(move.colour());
+	}
+
+	/**
+	 * @param colour the colour of the player passing; not null
+	 * @return the pass as a {@code long}
+	 */
+	public static long encodePass(Colour colour) {
+		return (long) colour.ordinal() << COLOUR_SHIFT | PASS;
+	}
+
+	/**
+	 * Encodes a ticket move without making it
+	 *
+	 * @param colour the colour of the player moving; not null
+	 * @param ticket the ticket used; not null
+	 * @param destination the destination, fitting in 24 bits
+	 * @return the move as a {@code long}
+	 */
+	public static long encodeTicket(Colour colour, Ticket ticket, int destination) {
+		return (long) colour.ordinal() << COLOUR_SHIFT | half(ticket, destination) << 2 | TICKET_MOVE;
+	}
+
+	/**
+	 * Encodes a double move without making it
+	 *
+	 * @param colour the colour of the player moving; not null
+	 * @param first the ticket of the first move; not null
+	 * @param firstDestination the destination of the first move, fitting in
+	 *        24 bits
+	 * @param second the ticket of the second move; not null
+	 * @param secondDestination the destination of the second move, fitting in
+	 *        24 bits
+	 * @return the move as a {@code long}
+	 */
+	public static long encodeDouble(Colour colour, Ticket first, int firstDestination, Ticket second,
+			int secondDestination) {
+		return (long) colour.ordinal() << COLOUR_SHIFT | half(second, secondDestination) << FIRST_BITS
+				| half(first, firstDestination) << 2 | DOUBLE_MOVE;
+	}
+
+	private static long half(Ticket ticket, int destination) {
+		if ((destination & ~LOCATION_MASK) != 0)
+			throw new IllegalArgumentException("Destination " + destination + " does not fit in "
+					+ LOCATION_BITS + " bits");
+		return (long) destination << 3 | ticket.ordinal();
+	}
+
+	/**
+	 * @param encoded an encoded move
+	 * @return the colour of the player making the move; never null
+	 * @throws IllegalArgumentException if there is no such colour
+	 */
+	public static Colour colour(long encoded) {
+		int colour = (int) (encoded >>> COLOUR_SHIFT);
+		if (colour >= COLOURS.length) throw new IllegalArgumentException("Colour " + colour);
+		return COLOURS[colour];
+	}
+
+	/**
+	 * @param encoded an encoded move
+	 * @return the kind of move: {@link #PASS}, {@link #TICKET_MOVE} or
+	 *         {@link #DOUBLE_MOVE}
+	 */
+	public static int kind(long encoded) {
+		return (int) encoded & 0x3;
+	}
+
+	/**
+	 * @param encoded an encoded ticket or double move
+	 * @return the ticket of the move, or of its first half; never null
+	 * @throws IllegalArgumentException if there is no such ticket
+	 */
+	public static Ticket firstTicket(long encoded) {
+		return ticket((int) (encoded >>> 2));
+	}
+
+	/**
+	 * @param encoded an encoded ticket or double move
+	 * @return the destination of the move, or of its first half
+	 */
+	public static int firstDestination(long encoded) {
+		return (int) (encoded >>> 5) & LOCATION_MASK;
+	}
+
+	/**
+	 * @param encoded an encoded double move
+	 * @return the ticket of the second half of the move; never null
+	 * @throws IllegalArgumentException if there is no such ticket
+	 */
+	public static Ticket secondTicket(long encoded) {
+		return ticket((int) (encoded >>> FIRST_BITS));
+	}
+
+	/**
+	 * @param encoded an encoded double move
+	 * @return the destination of the second half of the move
+	 */
+	public static int secondDestination(long encoded) {
+		return (int) (encoded >>> FIRST_BITS + 3) & LOCATION_MASK;
+	}
+
+	/**
+	 * @param encoded an encoded ticket or double move
+	 * @return where the player ends up after the move
+	 */
+	public static int finalDestination(long encoded) {
+		return kind(encoded) == DOUBLE_MOVE ? secondDestination(encoded) : firstDestination(encoded);
+	}
+
+	//the ticket with the ordinal in the low 3 bits
+	private static Ticket ticket(int bits) {
+		int ticket = bits & 0x7;
+		if (ticket >= TICKETS.length) throw new IllegalArgumentException("Ticket " + ticket);
+		return TICKETS[ticket];
+	}
+
+	/**
+	 * Decodes a move, interning pass and ticket moves
+	 *
+	 * @param encoded a move encoded by this codec
+	 * @return the move; never null
+	 * @throws IllegalArgumentException if {@code encoded} is no move
+	 */
+	public static Move decode(long encoded) {
+		Colour colour = colour(encoded);
+		switch (kind(encoded)) {
+			case PASS:
+				if ((encoded & ~(-1L << COLOUR_SHIFT)) != 0)
+					throw new IllegalArgumentException("Not a move: " + Long.toHexString(encoded));
+				return PASS_MOVES[colour.ordinal()];
+			case TICKET_MOVE:
+				if ((encoded >>> FIRST_BITS & ~(-1L << COLOUR_SHIFT - FIRST_BITS)) != 0)
+					throw new IllegalArgumentException("Not a move: " + Long.toHexString(encoded));
+				return ticketMove(colour, firstTicket(encoded), firstDestination(encoded));
+			case DOUBLE_MOVE:
+				TicketMove first = ticketMove(colour, firstTicket(encoded), firstDestination(encoded));
+				TicketMove second = ticketMove(colour, secondTicket(encoded), secondDestination(encoded));
+				return new DoubleMove(colour, first, second);
+			default:
+				throw new IllegalArgumentException("Not a move: " + Long.toHexString(encoded));
+		}
+	}
+
+	//the interned ticket move, new if the destination is not below INTERNED
+	private static TicketMove ticketMove(Colour colour, Ticket ticket, int destination) {
+		if (destination >= INTERNED) return new TicketMove(colour, ticket, destination);
+		TicketMove[] moves = TICKET_MOVES[colour.ordinal() * TICKETS.length + ticket.ordinal()];
+		TicketMove move = moves[destination];
+		//a race makes two equal moves at worst; the final fields of a move make it safe to share
+		if (move == null) moves[destination] = move = new TicketMove(colour, ticket, destination);
+		return move;
+	}
+
+	/**
+	 * Puts a move into a buffer, in at most {@link #MAX_BYTES} bytes
+	 *
+	 * @param out the buffer; not null
+	 * @param move the move; not null
+	 * @throws java.nio.BufferOverflowException if the buffer is full
+	 */
+	public static void write(ByteBuffer out, Move move) {
+		write(out, encode(move));
+	}
+
+	/**
+	 * Puts an encoded move into a buffer, in at most {@link #MAX_BYTES} bytes
+	 *
+	 * @param out the buffer; not null
+	 * @param encoded a move encoded by this codec
+	 * @throws java.nio.BufferOverflowException if the buffer is full
+	 */
+	public static void write(ByteBuffer out, long encoded) {
+		GameRecord.putVarint(out, (int) (encoded & FIRST_MASK) << 3 | (int) (encoded >>> COLOUR_SHIFT));
+		if (((int) encoded & 0x3) == DOUBLE_MOVE)
+			GameRecord.putVarint(out, (int) (encoded >>> FIRST_BITS) & (1 << HALF_BITS) - 1);
+	}
+
+	/**
+	 * Takes an encoded move out of a buffer, as put by
+	 * {@link #write(ByteBuffer, long)}
+	 *
+	 * @param in the buffer; not null
+	 * @return the encoded move
+	 * @throws java.nio.BufferUnderflowException if the buffer ends within the
+	 *         move
+	 */
+	public static long readEncoded(ByteBuffer in) {
+		int first = GameRecord.getVarint(in);
+		long encoded = (long) (first & 0x7) << COLOUR_SHIFT | first >>> 3;
+		if ((first >>> 3 & 0x3) == DOUBLE_MOVE) encoded |= (long) GameRecord.getVarint(in) << FIRST_BITS;
+		return encoded;
+	}
+
+	/**
+	 * Takes a move out of a buffer, as put by {@link #write(ByteBuffer, Move)}
+	 *
+	 * @param in the buffer; not null
+	 * @return the move, interned as by {@link #decode(long)}; never null
+	 * @throws java.nio.BufferUnderflowException if the buffer ends within the
+	 *         move
+	 * @throws IllegalArgumentException if the bytes are no move
+	 */
+	public static Move read(ByteBuffer in) {
+		return decode(readEncoded(in));
+	}
+
+	/**
+	 * Puts the number of moves, as a varint, and the moves into a buffer
+	 *
+	 * @param out the buffer; not null
+	 * @param moves the moves; not null
+	 * @throws java.nio.BufferOverflowException if the buffer is full
+	 */
+	public static void writeAll(ByteBuffer out, Collection<? extends Move> moves) {
+		GameRecord.putVarint(out, moves.size());
+		for (Move move : moves)
+			write(out, move);
+	}
+
+	/**
+	 * Puts the number of moves, as a varint, and the encoded moves into a
+	 * buffer
+	 *
+	 * @param out the buffer; not null
+	 * @param moves the encoded moves; not null
+	 * @param count the number of moves to put, from the start of the array
+	 * @throws java.nio.BufferOverflowException if the buffer is full
+	 */
+	public static void writeAll(ByteBuffer out, long[] moves, int count) {
+		if (count < 0 || count > moves.length) throw new IndexOutOfBoundsException("count " + count);
+		GameRecord.putVarint(out, count);
+		for (int i = 0; i < count; i++)
+			write(out, moves[i]);
+	}
+
+	/**
+	 * Takes moves out of a buffer, as put by
+	 * {@link #writeAll(ByteBuffer, Collection)}
+	 *
+	 * @param in the buffer; not null
+	 * @return the moves in the order they were put, interned as by
+	 *         {@link #decode(long)}; never null
+	 * @throws java.nio.BufferUnderflowException if the buffer ends within the
+	 *         moves
+	 * @throws IllegalArgumentException if the bytes are no moves
+	 */
+	public static List<Move> readAll(ByteBuffer in) {
+		int count = count(in);
+		List<Move> moves = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			moves.add(read(in));
+		return moves;
+	}
+
+	/**
+	 * Takes encoded moves out of a buffer, as put by
+	 * {@link #writeAll(ByteBuffer, long[], int)}, without making the moves
+	 *
+	 * @param in the buffer; not null
+	 * @return the encoded moves in the order they were put; never null
+	 * @throws java.nio.BufferUnderflowException if the buffer ends within the
+	 *         moves
+	 */
+	public static long[] readAllEncoded(ByteBuffer in) {
+		int count = count(in);
+		long[] moves = new long[count];
+		for (int i = 0; i < count; i++)
+			moves[i] = readEncoded(in);
+		return moves;
+	}
+
+	//the number of moves that follows, each taking at least a byte
+	private static int count(ByteBuffer in) {
+		int count = GameRecord.getVarint(in);
+		if (count < 0) throw new IllegalArgumentException("Negative count");
+		if (count > in.remaining()) throw new BufferUnderflowException();
+		return count;
+	}
+
+}
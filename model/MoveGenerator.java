@@ -0,0 +1,232 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.Ticket.UNDERGROUND;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import uk.ac.bris.cs.gamekit.graph.Graph;
+
+/**
+ * Generates the valid moves of a player from the adjacency tables of an
+ * {@link IndexedGraph}, which are precomputed per node and split by
+ * {@link Transport}. Occupied locations are given as a bitset of node values
+ * and tickets as counts indexed by {@link Ticket#ordinal()}, so the generator
+ * never has to scan the players of a game.
+ *
+ * <br>
+ * The generated moves are exactly the ones {@link ScotlandYardModel} has
+ * always considered valid. The {@link MoveSink} variant does not allocate and
+ * reports every move once.
+ */
+public class MoveGenerator {
+
+	/**
+	 * Number of slots one player occupies in a ticket count array
+	 */
+	public static final int TICKET_SLOTS = Ticket.values().length;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	// tickets that pay for a single transport, see Ticket#transport(); the ferry has none
+	private static final Ticket[] TICKETED = { TAXI, BUS, UNDERGROUND };
+
+	private final IndexedGraph graph;
+
+	/**
+	 * Creates a generator over the adjacency tables of an indexed graph
+	 *
+	 * @param graph the indexed graph of the game; not null
+	 */
+	public MoveGenerator(IndexedGraph graph) {
+		this.graph = Objects.requireNonNull(graph);
+	}
+
+	/**
+	 * Indexes the given graph and creates a generator over it
+	 *
+	 * @param graph the graph of the game; not null, node values must not be
+	 *        negative
+	 */
+	public MoveGenerator(Graph<Integer, Transport> graph) {
+		this(new IndexedGraph(graph));
+	}
+
+	/**
+	 * @return the indexed graph the moves are generated from; never null
+	 */
+	public IndexedGraph graph() {
+		return graph;
+	}
+
+	/**
+	 * Copies ticket counts from a map into a count array
+	 *
+	 * @param tickets the tickets of a player; not null, missing tickets count
+	 *        as zero
+	 * @param into the array to write to; not null
+	 * @param offset index of the player's first slot in {@code into}
+	 */
+	public static void ticketCounts(Map<Ticket, Integer> tickets, int[] into, int offset) {
+		for (Ticket ticket : TICKETS) {
+			Integer count = tickets.get(ticket);
+			into[offset + ticket.ordinal()] = count == null ? 0 : count;
+		}
+	}
+
+	/**
+	 * Generates all valid moves of a player and hands them to the sink. A
+	 * detective without a valid ticket move gets a single pass move, MrX may
+	 * also use double moves when at least two rounds remain.
+	 *
+	 * @param colour the colour of the player; not null
+	 * @param location the location of the player
+	 * @param tickets ticket counts indexed by {@link Ticket#ordinal()}; not null
+	 * @param offset index of the player's first slot in {@code tickets}
+	 * @param occupied node values occupied by detectives; not null
+	 * @param roundsRemaining number of rounds MrX has left to play
+	 * @param sink the sink receiving the moves; not null
+	 */
+	public void generate(Colour colour, int location, int[] tickets, int offset,
+			BitSet occupied, int roundsRemaining, MoveSink sink) {
+		int secrets = tickets[offset + SECRET.ordinal()];
+		boolean moved = false;
+
+		//====================================SINGLE MOVE=========================================
+		for (Ticket ticket : TICKETED) {
+			if (tickets[offset + ticket.ordinal()] <= 0) continue;
+			for (int destination : graph.neighbours(location, ticket.transport())) {
+				if (occupied.get(destination)) continue;
+				sink.ticketMove(colour, ticket, destination);
+				moved = true;
+			}
+		}
+		// ferries can only be taken with a secret ticket, which also covers every other edge
+		if (secrets > 0) {
+			for (int destination : graph.neighbours(location)) {
+				if (occupied.get(destination)) continue;
+				sink.ticketMove(colour, SECRET, destination);
+				moved = true;
+			}
+		}
+
+		if (colour.isDetective()) {
+			if (!moved) sink.passMove(colour);
+			return;
+		}
+
+		//=======================================DOUBLE MOVES=====================================
+		if (tickets[offset + DOUBLE.ordinal()] <= 0 || roundsRemaining < 2) return;
+
+		//1:NORMAL - 2:NORMAL and 1:NORMAL - 2:SECRET
+		for (Ticket first : TICKETED) {
+			if (tickets[offset + first.ordinal()] <= 0) continue;
+			for (int firstDestination : graph.neighbours(location, first.transport())) {
+				if (occupied.get(firstDestination)) continue;
+				for (Ticket second : TICKETED) {
+					int left = tickets[offset + second.ordinal()] - (first == second ? 1 : 0);
+					if (left <= 0) continue;
+					for (int secondDestination : graph.neighbours(firstDestination, second.transport())) {
+						if (occupied.get(secondDestination)) continue;
+						sink.doubleMove(colour, first, firstDestination, second, secondDestination);
+					}
+				}
+				if (secrets > 0) {
+					for (int secondDestination : graph.neighbours(firstDestination)) {
+						if (occupied.get(secondDestination)) continue;
+						sink.doubleMove(colour, first, firstDestination, SECRET, secondDestination);
+					}
+				}
+			}
+		}
+
+		//1:SECRET - 2:NORMAL and 1:SECRET - 2:SECRET
+		if (secrets <= 0) return;
+		for (int firstDestination : graph.neighbours(location)) {
+			if (occupied.get(firstDestination)) continue;
+			for (Ticket second : TICKETED) {
+				if (tickets[offset + second.ordinal()] <= 0) continue;
+				for (int secondDestination : graph.neighbours(firstDestination, second.transport())) {
+					if (occupied.get(secondDestination)) continue;
+					sink.doubleMove(colour, SECRET, firstDestination, second, secondDestination);
+				}
+			}
+			// a ferry edge already costs a secret ticket, so a single secret
+			// ticket is enough when either leg is a ferry
+			boolean firstByFerry = secrets == 1
+					&& graph.isEdge(location, firstDestination, Transport.FERRY);
+			for (int secondDestination : graph.neighbours(firstDestination)) {
+				if (occupied.get(secondDestination)) continue;
+				if (secrets >= 2 || firstByFerry
+						|| graph.isEdge(firstDestination, secondDestination, Transport.FERRY))
+					sink.doubleMove(colour, SECRET, firstDestination, SECRET, secondDestination);
+			}
+		}
+	}
+
+	/**
+	 * Generates all valid moves of a player, see
+	 * {@link #generate(Colour, int, int[], int, BitSet, int, MoveSink)}
+	 *
+	 * @return a mutable set of the valid moves; never null
+	 */
+	public Set<Move> validMoves(Colour colour, int location, int[] tickets, int offset,
+			BitSet occupied, int roundsRemaining) {
+		MoveCollector collector = new MoveCollector();
+		generate(colour, location, tickets, offset, occupied, roundsRemaining, collector);
+		return collector.moves;
+	}
+
+	/**
+	 * Whether a player has at least one valid ticket move. A player without
+	 * one has no double move either, so for MrX this tells whether he can
+	 * move at all and for a detective whether he has to pass.
+	 *
+	 * @param location the location of the player
+	 * @param tickets ticket counts indexed by {@link Ticket#ordinal()}; not null
+	 * @param offset index of the player's first slot in {@code tickets}
+	 * @param occupied node values occupied by detectives; not null
+	 * @return true if the player has a valid ticket move, false otherwise
+	 */
+	public boolean hasTicketMove(int location, int[] tickets, int offset, BitSet occupied) {
+		for (Ticket ticket : TICKETED) {
+			if (tickets[offset + ticket.ordinal()] <= 0) continue;
+			for (int destination : graph.neighbours(location, ticket.transport()))
+				if (!occupied.get(destination)) return true;
+		}
+		if (tickets[offset + SECRET.ordinal()] > 0) {
+			for (int destination : graph.neighbours(location))
+				if (!occupied.get(destination)) return true;
+		}
+		return false;
+	}
+
+	private static class MoveCollector implements MoveSink {
+
+		private final Set<Move> moves = new HashSet<>();
+
+		@Override
+		public void ticketMove(Colour colour, Ticket ticket, int destination) {
+			moves.add(new TicketMove(colour, ticket, destination));
+		}
+
+		@Override
+		public void doubleMove(Colour colour, Ticket first, int firstDestination, Ticket second,
+				int secondDestination) {
+			moves.add(new DoubleMove(colour, first, firstDestination, second, secondDestination));
+		}
+
+		@Override
+		public void passMove(Colour colour) {
+			moves.add(new PassMove(colour));
+		}
+	}
+
+}
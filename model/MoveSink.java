@@ -0,0 +1,37 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+/**
+ * Receives moves produced by a {@link MoveGenerator} without materialising
+ * {@link Move} objects
+ */
+public interface MoveSink {
+
+	/**
+	 * Called for every valid ticket move
+	 *
+	 * @param colour the colour of the player making the move; never null
+	 * @param ticket the ticket used for the move; never null
+	 * @param destination the destination of the move
+	 */
+	void ticketMove(Colour colour, Ticket ticket, int destination);
+
+	/**
+	 * Called for every valid double move
+	 *
+	 * @param colour the colour of the player making the move; never null
+	 * @param first the ticket used for the first move; never null
+	 * @param firstDestination the destination of the first move
+	 * @param second the ticket used for the second move; never null
+	 * @param secondDestination the destination of the second move
+	 */
+	default void doubleMove(Colour colour, Ticket first, int firstDestination, Ticket second,
+			int secondDestination) {}
+
+	/**
+	 * Called when a detective has no valid ticket move and has to pass
+	 *
+	 * @param colour the colour of the player making the move; never null
+	 */
+	default void passMove(Colour colour) {}
+
+}
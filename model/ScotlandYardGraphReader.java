@@ -1,9 +1,15 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 import uk.ac.bris.cs.gamekit.graph.Edge;
 import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
@@ -13,10 +19,16 @@ import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
 //TODO test should be in same module, currently in scotlandyard-model
 /**
  * A collection of utility methods that reads in the a scotlandyard node map
+ *
+ * <br>
+ * Lines are tokenised in place, so reading from a {@link Reader},
+ * {@link InputStream} or {@link Path} never holds more than one line of the
+ * map in memory.
  */
 public class ScotlandYardGraphReader {
 
-	private static final String DELIMITER = " ";
+	private static final char DELIMITER = ' ';
+	private static final Transport[] TRANSPORTS = Transport.values();
 
 	private ScotlandYardGraphReader() {
 		// nope
@@ -31,77 +43,237 @@ public class ScotlandYardGraphReader {
 	public static ImmutableGraph<Integer, Transport> fromLines(List<String> lines) {
 		if (lines == null) throw new NullPointerException("lines == null");
 		if (lines.isEmpty()) throw new IllegalArgumentException("Lines must not be empty!");
+		Lines source = new Lines() {
+			private int index;
 
-		String[] topLine = parseLine(0, lines, DELIMITER, 2);
+			@Override
+			public CharSequence next() {
+				if (index == lines.size()) return null;
+				String line = lines.get(index);
+				if (line == null) throw new NullPointerException("Line " + index + " is null");
+				index++;
+				return line;
+			}
+		};
+		try {
+			return parse(source, lines.size());
+		} catch (IOException e) {
+			throw new AssertionError(e); // lists do not do IO
+		}
+	}
+
+	/**
+	 * Reads a Scotland Yard game map in a single pass
+	 *
+	 * @param reader the reader; not null, not closed by this method
+	 * @return a graph for {@link ScotlandYardGame} to use
+	 * @throws IOException if the reader fails
+	 */
+	public static ImmutableGraph<Integer, Transport> fromReader(Reader reader)
+			throws IOException {
+		if (reader == null) throw new NullPointerException("reader == null");
+		return parse(new ReaderLines(reader), -1);
+	}
+
+	/**
+	 * Reads a UTF-8 encoded Scotland Yard game map in a single pass
+	 *
+	 * @param stream the stream; not null, not closed by this method
+	 * @return a graph for {@link ScotlandYardGame} to use
+	 * @throws IOException if the stream fails
+	 */
+	public static ImmutableGraph<Integer, Transport> fromStream(InputStream stream)
+			throws IOException {
+		if (stream == null) throw new NullPointerException("stream == null");
+		return fromReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads a UTF-8 encoded Scotland Yard game map file in a single pass
+	 *
+	 * @param path the file; not null
+	 * @return a graph for {@link ScotlandYardGame} to use
+	 * @throws IOException if the file cannot be read
+	 */
+	public static ImmutableGraph<Integer, Transport> fromPath(Path path) throws IOException {
+		if (path == null) throw new NullPointerException("path == null");
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return fromReader(reader);
+		}
+	}
+
+	// lineCount is the number of lines if known up front, -1 otherwise
+	private static ImmutableGraph<Integer, Transport> parse(Lines lines, int lineCount)
+			throws IOException {
+		CharSequence line = lines.next();
+		if (line == null) throw new IllegalArgumentException("Lines must not be empty!");
+
+		int[] segments = new int[6]; // start and end of each segment
+		split(0, line, 2, segments);
 		int numberOfNodes;
 		int numberOfEdges;
 		try {
-			numberOfNodes = Integer.parseInt(topLine[0]);
-			numberOfEdges = Integer.parseInt(topLine[1]);
+			numberOfNodes = parseInt(line, segments[0], segments[1]);
+			numberOfEdges = parseInt(line, segments[2], segments[3]);
+			if (numberOfNodes < 0 || numberOfEdges < 0) throw new NumberFormatException();
 		} catch (NumberFormatException e) {
-			throw new IllegalArgumentException("Invalid symbol at line 1:\n\t" + lines.get(0));
+			throw new IllegalArgumentException("Invalid symbol at line 1:\n\t" + line);
 		}
 
-		if (numberOfNodes + numberOfEdges > lines.size() - 1)
+		if (lineCount >= 0 && numberOfNodes + numberOfEdges > lineCount - 1)
 			throw new IllegalArgumentException("Line count < (edge count + node count)");
 
 		UndirectedGraph<Integer, Transport> graph = new UndirectedGraph<>();
 
 		// we read the first line already
 		for (int i = 1; i <= numberOfNodes; i++) {
-			if (lines.get(i).isEmpty())
-				throw new IllegalArgumentException("Expected non-empty line at line " + i);
-			String value = parseLine(i, lines, DELIMITER, 1)[0];
+			line = nextLine(lines, i);
+			split(i, line, 1, segments);
 			try {
-				graph.addNode(new Node<>(Integer.parseInt(value)));
+				graph.addNode(new Node<>(parseInt(line, segments[0], segments[1])));
 			} catch (NumberFormatException e) {
 				throw new IllegalArgumentException(
-						"Expected integer at line " + i + "\n\t" + lines.get(i));
+						"Expected integer at line " + i + "\n\t" + line);
 			}
 		}
 
 		for (int i = numberOfNodes + 1; i <= numberOfNodes + numberOfEdges; i++) {
-			if (lines.get(i).isEmpty())
-				throw new IllegalArgumentException("Expected non-empty line at line " + i);
-			String[] segments = parseLine(i, lines, DELIMITER, 3);
+			line = nextLine(lines, i);
+			split(i, line, 3, segments);
 
 			Node<Integer> source;
 			Node<Integer> destination;
-			Transport data;
 			try {
-				source = graph.getNode(Integer.parseInt(segments[0]));
-				destination = graph.getNode(Integer.parseInt(segments[1]));
+				source = graph.getNode(parseInt(line, segments[0], segments[1]));
+				destination = graph.getNode(parseInt(line, segments[2], segments[3]));
 			} catch (NumberFormatException e) {
 				throw new IllegalArgumentException(
-						"Expected integer at line " + i + "\n\t" + lines.get(i));
-			}
-			try {
-				data = Transport.valueOf(segments[2].toUpperCase(Locale.ENGLISH));
-			} catch (IllegalArgumentException e) {
-				throw new IllegalArgumentException(
-						"Expected enum with value of " + Arrays.toString(Transport.values())
-								+ " at line " + i + "\n\t" + lines.get(i));
+						"Expected integer at line " + i + "\n\t" + line);
 			}
+			Transport data = parseTransport(line, segments[4], segments[5]);
+			if (data == null) throw new IllegalArgumentException(
+					"Expected enum with value of " + Arrays.toString(TRANSPORTS)
+							+ " at line " + i + "\n\t" + line);
 			if (source == null) throw new IllegalArgumentException(
-					"Expected source node to exist in graph  at line " + i + "\n\t" + lines.get(i));
+					"Expected source node to exist in graph  at line " + i + "\n\t" + line);
 			if (destination == null) throw new IllegalArgumentException(
 					"Expected destination node to exist in graph  at line " + i + "\n\t"
-							+ lines.get(i));
+							+ line);
 			graph.addEdge(new Edge<>(source, destination, data));
 		}
 		return new ImmutableGraph<>(graph);
 	}
 
-	private static String[] parseLine(int line, List<String> lines, String delimiter,
-			int expectedSegments) {
-		String currentLine = lines.get(line);
-		if (currentLine == null) throw new NullPointerException("Line " + line + " is null");
-		String[] segments = currentLine.split(Pattern.quote(delimiter));
-		if (segments.length != expectedSegments) throw new IllegalArgumentException(
-				"Expected " + expectedSegments + " occurrences of delimiter \"" + delimiter
-						+ "\" on line " + line + ":\n\t" + line);
-		return segments;
+	private static CharSequence nextLine(Lines lines, int i) throws IOException {
+		CharSequence line = lines.next();
+		if (line == null)
+			throw new IllegalArgumentException("Line count < (edge count + node count)");
+		if (line.length() == 0)
+			throw new IllegalArgumentException("Expected non-empty line at line " + i);
+		return line;
+	}
+
+	// splits like String.split, i.e. empty segments count except trailing ones
+	private static void split(int i, CharSequence line, int expectedSegments, int[] into) {
+		int count = 0;
+		int nonEmpty = 0;
+		int start = 0;
+		for (int end = 0; end <= line.length(); end++) {
+			if (end < line.length() && line.charAt(end) != DELIMITER) continue;
+			if (count < expectedSegments) {
+				into[count * 2] = start;
+				into[count * 2 + 1] = end;
+			}
+			count++;
+			if (end > start) nonEmpty = count;
+			start = end + 1;
+		}
+		if (nonEmpty != expectedSegments) throw new IllegalArgumentException(
+				"Expected " + expectedSegments + " occurrences of delimiter \"" + DELIMITER
+						+ "\" on line " + i + ":\n\t" + line);
+	}
+
+	// same as Integer.parseInt on the given range, without creating a string
+	private static int parseInt(CharSequence line, int start, int end) {
+		if (start == end) throw new NumberFormatException();
+		boolean negative = false;
+		char first = line.charAt(start);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			if (++start == end) throw new NumberFormatException();
+		}
+		long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit(line.charAt(i), 10);
+			if (digit < 0) throw new NumberFormatException();
+			value = value * 10 + digit;
+			if (value > limit) throw new NumberFormatException();
+		}
+		return (int) (negative ? -value : value);
+	}
 
+	// same as Transport.valueOf(segment.toUpperCase(Locale.ENGLISH)), null if there is no match
+	private static Transport parseTransport(CharSequence line, int start, int end) {
+		for (Transport transport : TRANSPORTS) {
+			String name = transport.name();
+			if (name.length() != end - start) continue;
+			boolean matches = true;
+			for (int i = 0; i < name.length() && matches; i++)
+				matches = Character.toUpperCase(line.charAt(start + i)) == name.charAt(i);
+			if (matches) return transport;
+		}
+		// fall back for the few characters that change length when upper cased
+		String segment = line.subSequence(start, end).toString().toUpperCase(Locale.ENGLISH);
+		for (Transport transport : TRANSPORTS)
+			if (transport.name().equals(segment)) return transport;
+		return null;
+	}
+
+	private interface Lines {
+
+		// the next line without its terminator, null at the end of input; may be reused by the next call
+		CharSequence next() throws IOException;
+	}
+
+	// reads lines ended by \n, \r or \r\n into a single reused buffer
+	private static final class ReaderLines implements Lines {
+
+		private final Reader reader;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder line = new StringBuilder();
+		private int position;
+		private int limit;
+		private boolean skipLineFeed;
+
+		ReaderLines(Reader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public CharSequence next() throws IOException {
+			line.setLength(0);
+			while (true) {
+				if (position == limit) {
+					int read = reader.read(buffer, 0, buffer.length);
+					if (read < 0) return line.length() == 0 ? null : line;
+					position = 0;
+					limit = read;
+					continue;
+				}
+				char c = buffer[position++];
+				if (skipLineFeed) {
+					skipLineFeed = false;
+					if (c == '\n') continue;
+				}
+				if (c == '\n') return line;
+				if (c == '\r') {
+					skipLineFeed = true;
+					return line;
+				}
+				line.append(c);
+			}
+		}
 	}
 
 }
@@ -11,15 +11,18 @@ import static uk.ac.bris.cs.scotlandyard.model.Ticket.*;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
-import uk.ac.bris.cs.gamekit.graph.Edge;
 import uk.ac.bris.cs.gamekit.graph.ImmutableGraph;
 import uk.ac.bris.cs.gamekit.graph.Graph;
 
@@ -28,12 +31,26 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
 
     //Fields of ScotlandYardModel
     private final List<Boolean> rounds;
-    private final Graph<Integer, Transport> graph;
+    private volatile ImmutableGraph<Integer, Transport> immutableGraph; //shared immutable view of the map <= getGraph()
+    private final CompiledMap compiledMap;                            //builds immutableGraph when first asked, null if given a graph
+    private final IndexedGraph indexedGraph;                          //array backed adjacency of the map <= getIndexedGraph()
     private ArrayList<ScotlandYardPlayer> players;
     private int blackLatestLocation = 0;  //keeps track Mr. X's latest location
     private int currentRound = 0;
     private int currentPlayer = 0;
     private Set<Spectator> spectators = new HashSet<>();
+    private final MoveGenerator moveGenerator;              //precomputed adjacency tables to generate valid moves
+    private final BitSet detectiveLocations = new BitSet(); //locations occupied by detectives
+    private final ScotlandYardPlayer[] playerOf = new ScotlandYardPlayer[Colour.values().length]; //player per colour ordinal, null if not playing
+    private final WinConditionTracker winConditions;        //keeps track of stuck detectives, capture and round limit
+    private volatile boolean awaitingMove = false;          //advanceAsync() asked for a move that was not played yet
+    private boolean gameOverNotified = false;               //spectators were told the game is over, advance() does not tell them again
+    private ModelTimer timer = ModelTimer.NONE;             //told how long move generation and win checks take <= setTimer()
+    private boolean timed = false;                          //timer is not NONE, otherwise the clock is not read
+    private final List<Colour> colours;                         //colours of the players in order, unmodifiable <= getPlayers()
+    private GameSnapshot snapshot;                          //snapshot of the state below <= snapshot()
+    private int snapshotVersion;                            //version of winConditions the snapshot was made at
+    private boolean spectatorSnapshots = false;             //spectators get snapshot() instead of the live model
     //
 
     //Constructor of ScotlandYardModel
@@ -41,14 +58,34 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
                              PlayerConfiguration mrX, PlayerConfiguration firstDetective,
                              PlayerConfiguration... restOfTheDetectives) {
 
-        this.rounds = requireNonNull(rounds);
-        this.graph = requireNonNull(graph);
+        this(rounds, new IndexedGraph(requireNonNull(graph)), new ImmutableGraph<>(graph), null,
+                mrX, firstDetective, restOfTheDetectives);
+    }
+
+    //a game on a compiled map: the index and the move generator are built from the map's arrays, and the graph of
+    //getGraph() only when someone asks for it
+    public ScotlandYardModel(List<Boolean> rounds, CompiledMap map,
+                             PlayerConfiguration mrX, PlayerConfiguration firstDetective,
+                             PlayerConfiguration... restOfTheDetectives) {
+
+        this(rounds, new IndexedGraph(requireNonNull(map)), null, map, mrX, firstDetective, restOfTheDetectives);
+    }
+
+    private ScotlandYardModel(List<Boolean> rounds, IndexedGraph indexedGraph,
+                              ImmutableGraph<Integer, Transport> immutableGraph, CompiledMap compiledMap,
+                              PlayerConfiguration mrX, PlayerConfiguration firstDetective,
+                              PlayerConfiguration... restOfTheDetectives) {
+
+        this.rounds = unmodifiableList(new ArrayList<>(requireNonNull(rounds))); //copied once, shared with every snapshot
+        this.indexedGraph = indexedGraph;
+        this.immutableGraph = immutableGraph;
+        this.compiledMap = compiledMap;
 
         //check if rounds and graph are empty
         if (rounds.isEmpty()) {
             throw new IllegalArgumentException("Empty rounds");
         }
-        if (graph.isEmpty()) {
+        if (indexedGraph.nodeCount() == 0) {
             throw new IllegalArgumentException("Empty graph");
         }
         //
@@ -107,8 +144,21 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
             ScotlandYardPlayer SYplayer = new ScotlandYardPlayer
                     (playerConf.player, playerConf.colour, playerConf.location, playerConf.tickets);
             players.add(SYplayer);
+            playerOf[playerConf.colour.ordinal()] = SYplayer;
             //
+
+            if (playerConf.colour != BLACK)
+                detectiveLocations.set(playerConf.location);
         }
+
+        ArrayList<Colour> colourList = new ArrayList<>();
+        for (ScotlandYardPlayer player : players) {
+            colourList.add(player.colour());
+        }
+        colours = Collections.unmodifiableList(colourList);
+
+        moveGenerator = new MoveGenerator(indexedGraph);
+        winConditions = new WinConditionTracker(moveGenerator, players, detectiveLocations, rounds.size());
     }
 
 
@@ -149,6 +199,16 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
 
     public void accept(Move chosenMove){
 
+        if (play(chosenMove)) {
+            requestMove(this); //ask the next player, who calls accept() again
+        }
+    }
+
+
+    //plays the chosen move of the current player and notifies the spectators
+    //returns true if the rotation goes on, i.e. the next player has to be asked for a move
+    private boolean play(Move chosenMove){
+
         Set<Move> moves; //set with all valid moves
         moves = validMove(players.get(currentPlayer).location(), getCurrentPlayer());
 
@@ -170,25 +230,13 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
             chosenMove.visit(this); //play the move
 
             //after playing the move check if gameOver
-			if (isGameOver()){
-                Set<Colour> winningPlayers;
-                winningPlayers = getWinningPlayers();
-                for (Spectator spectator:spectators){ //notify spectators with winning players that game is over
-                    spectator.onGameOver(this, winningPlayers);
-                }
+			if (gameOver()){
+                notifyGameOver();
+                return false;
             }
 			//
 
-            else{
-
-                //ask user to choose the move of next player
-                int location;
-                location = players.get(currentPlayer).location(); //current player's (next player) location
-                Player player;
-                player = players.get(currentPlayer).player();     //current player
-                moves = validMove(location, getCurrentPlayer());  //generate the valid moves
-                player.makeMove(this, location, moves, this); //ask for move
-            }
+            return true; //the next player has to choose a move
         }
 
         //The player rotation is complete
@@ -197,218 +245,261 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
             chosenMove.visit(this); //play the move
 
             //after playing the move check if gameOver
-            if (isGameOver()){
-                Set<Colour> winningPlayers;
-                winningPlayers = getWinningPlayers();
-                for (Spectator spectator:spectators){ //notify spectators with winning players that game is over
-                    spectator.onGameOver(this, winningPlayers);
-                }
+            if (gameOver()){
+                notifyGameOver();
             }
 
             //notify spectators that rotation is complete
             else{
 
                 for (Spectator spectator:spectators){
-                    spectator.onRotationComplete(this);
+                    spectator.onRotationComplete(spectatorView());
                 }
             }
+            return false;
         }
     }
 
 
-    //check if player has adequate tickets for specific transportation <= used in validMoves()
-    private boolean adequateTickets(Ticket ticket, Colour colourOfPlayer,int temp) {
-        //temp variable to take into account the tickets used for double moves of MrX, since the move hasn't been played yet
+    //asks the current player to choose a move from its valid moves, the choice is passed to callback
+    private void requestMove(Consumer<Move> callback){
 
-        for (ScotlandYardPlayer player : players){
-            if (player.colour() == colourOfPlayer){
-                return (player.tickets().get(ticket) - temp > 0); //check if adequate tickets
-            }
+        int location;
+        location = players.get(currentPlayer).location(); //current player's location
+        Player player;
+        player = players.get(currentPlayer).player();     //current player
+        Set<Move> moves;
+        moves = validMove(location, getCurrentPlayer());  //generate the valid moves
+        player.makeMove(this, location, moves, callback); //ask for move
+    }
+
+
+    //notifies all spectators with the winning players that the game is over
+    private void notifyGameOver(){
+
+        gameOverNotified = true;
+        Set<Colour> winningPlayers;
+        winningPlayers = getWinningPlayers();
+        for (Spectator spectator:spectators){
+            spectator.onGameOver(spectatorView(), winningPlayers);
         }
-        return false;
     }
 
 
-    //None of the other players is already on the destination of the current player <= used in validMoves()
-    private boolean locationFree(int destination, Colour playerColour){
+    //an immutable copy of what the view shows now, see GameSnapshot
+    //the copy is made once per state of the game: moves and passes change the version of winConditions,
+    //the current player and the round are compared as the player and round can advance without a move
+    public GameSnapshot snapshot() {
 
-        int numberOfPlayers = players.size();
-        int temp=0; //keep track of all players that aren't on the destination location
+        int version = winConditions.version();
+        if (snapshot != null && snapshotVersion == version && snapshot.getCurrentRound() == currentRound
+                && snapshot.getCurrentPlayer() == getCurrentPlayer()) {
+            return snapshot;
+        }
 
-        for (ScotlandYardPlayer player : players.subList(1,players.size())){ //check if all other players aren't currently in the destination position
-            if (player.colour() == playerColour){ //if we check player which is the current players
-                temp+=1;
-            }
-            else if (player.location() != destination){ //for rest of players checks that they're on different location than the destination
-                temp+=1;
-            }
+        int[] locations = new int[Colour.values().length];
+        int[] tickets = new int[Colour.values().length * MoveGenerator.TICKET_SLOTS];
+        Arrays.fill(locations, -1);
+        Arrays.fill(tickets, -1);
+        for (ScotlandYardPlayer player : players) {
+            int colour = player.colour().ordinal();
+            locations[colour] = player.isMrX() ? blackLatestLocation : player.location(); //Mr. X as the view shows him
+            System.arraycopy(player.ticketCounts(), 0, tickets, colour * MoveGenerator.TICKET_SLOTS,
+                    MoveGenerator.TICKET_SLOTS);
         }
 
-        return (temp == numberOfPlayers-1); //no player (other than MrX) is on destination location = true
+        snapshot = new GameSnapshot(colours, locations, tickets, getCurrentPlayer(), currentRound,
+                isGameOver(), getWinningPlayers(), rounds, this::getGraph, indexedGraph);
+        snapshotVersion = version;
+        return snapshot;
     }
 
-    //generates the valid moves of a player from a specific location
-    private Set<Move> validMove(int location, Colour colourOfPlayer) {
 
-        Set<Move> moves = new HashSet<>(); //set for all valid moves
-        Collection<Edge<Integer, Transport>> edges = graph.getEdgesFrom(graph.getNode(location)); //collection of edges from location
-        int temp = 0; //<= used for adequateTickets()
+    //with true the spectators are called with snapshot() instead of the model itself, so they can keep the view
+    //or read it from another thread; the spectators of a state share one snapshot
+    public void setSpectatorSnapshots(boolean spectatorSnapshots) {
 
+        this.spectatorSnapshots = spectatorSnapshots;
+    }
 
-        //====================================SINGLE MOVE=========================================
-        //iterates through all of the edges and finds valid single moves
-        for (Edge<Integer, Transport> edge : edges) {
 
-            Ticket ticket = fromTransport(edge.data());
-            int destination = edge.destination().value();
-            TicketMove move = new TicketMove(colourOfPlayer, ticket , destination);
+    //the view passed to the spectators
+    private ScotlandYardView spectatorView() {
 
-            //NORMAL TICKET
-            if (adequateTickets(ticket, colourOfPlayer,temp)){ //check for adequate tickets on player
-                if (locationFree(destination, colourOfPlayer)){ //check if destination location is free
+        return spectatorSnapshots ? snapshot() : this;
+    }
 
-                    moves.add(move);
-                }
-            }
-            //
 
-            //SECRET TICKET
-            if (adequateTickets(SECRET, colourOfPlayer,temp)){ //check for adequate secret tickets
-                if (locationFree(destination, colourOfPlayer)) { //check if destination location is free
+    //times the model's move generation and win checks with timer from now on, ModelTimer.NONE stops timing
+    public void setTimer(ModelTimer timer) {
 
-                    moves.add(new TicketMove(colourOfPlayer, SECRET, destination));
-                }
-            }
-            //
-        }
+        this.timer = requireNonNull(timer);
+        this.timed = timer != ModelTimer.NONE;
+    }
 
-        //If detective has no place to go just PASS
-        if (!colourOfPlayer.equals(BLACK)) {
-            if (moves.isEmpty())
-                moves.add(new PassMove(colourOfPlayer));
-        }
-        //=======================================OVER_SINGLE MOVE=====================================
 
+    //isGameOver() for the model's own checks, timed if there is a timer
+    private boolean gameOver() {
 
-        //=======================================DOUBLE MOVES=====================================
-        else { //If current player is Mr. X check for double moves
+        if (!timed) return isGameOver();
+        long start = System.nanoTime();
+        boolean over = isGameOver();
+        timer.onWinChecked(System.nanoTime() - start);
+        return over;
+    }
 
-            //checks for adequate double tickets & that there are enough rounds to play a double move
-            if ((adequateTickets(DOUBLE, colourOfPlayer,temp)) && (rounds.size()-currentRound>=2))  {
 
-                //Checking for first move
-                Collection<Edge<Integer, Transport>> edges_firstmove = graph.getEdgesFrom(graph.getNode(location));
-                for (Edge<Integer, Transport> edge_firstmove : edges_firstmove) {
+    //generateMoves(), timed if there is a timer
+    private Set<Move> validMove(int location, Colour colourOfPlayer) {
+
+        if (!timed) return generateMoves(location, colourOfPlayer);
+        long start = System.nanoTime();
+        Set<Move> moves = generateMoves(location, colourOfPlayer);
+        timer.onMovesGenerated(System.nanoTime() - start);
+        return moves;
+    }
 
-                    Ticket ticket_first = fromTransport(edge_firstmove.data());
-                    int destination_first = edge_firstmove.destination().value();
 
-                    //Checking for second move
-                    Collection<Edge<Integer, Transport>> edges_secondmove = graph.getEdgesFrom(graph.getNode(destination_first));
-                    for (Edge<Integer, Transport> edge_secondmove : edges_secondmove) {
+    //generates the valid moves of a player from a specific location
+    //the moves come from the precomputed adjacency tables of moveGenerator, detectives' locations are kept in detectiveLocations
+    private Set<Move> generateMoves(int location, Colour colourOfPlayer) {
 
-                        Ticket ticket_second = fromTransport(edge_secondmove.data());
-                        int destination_second = edge_secondmove.destination().value();
-                        temp = 0; //<= used for adequateTickets()
+        int[] tickets = playerOf[colourOfPlayer.ordinal()].ticketCounts(); //the generator reads the player's counts directly
 
-                        //1:NORMAL - 2:NORMAL
-                        //1st move normal ticket?
-                        if (adequateTickets(ticket_first, colourOfPlayer,temp)) { //check for adequate tickets on player
-                            if (locationFree(destination_first, colourOfPlayer)) { //check if first move destination location is free
+        return moveGenerator.validMoves(colourOfPlayer, location, tickets, 0,
+                detectiveLocations, rounds.size() - currentRound); //all the valid moves the generator found
+    }
 
-                                if (ticket_first == ticket_second) temp = 1; //the first and second tickets used are the same
 
+    @Override
+    public void startRotate() {
 
-                                //2nd move normal ticket?
-                                if (adequateTickets(ticket_second, colourOfPlayer, temp)) { //check for adequate tickets for second move taking into consideration the first move
-                                    if (locationFree(destination_second, colourOfPlayer)) { //check if second move destination location is free
+        currentPlayer = 0; //start from Mr. X
 
-                                        moves.add(new DoubleMove(colourOfPlayer, ticket_first, destination_first, ticket_second, destination_second));
-                                    }
-                                }
-                            }
-                        }
+        //check if game is over before game starts
+        if (gameOver()){
+            notifyGameOver();
+            throw new IllegalStateException("GAME IS OVER");
+        }
 
+        else{
+            requestMove(this); //every accept() asks the next player until the rotation is complete
+        }
+    }
 
-                        //1:SECRET - 2:NORMAL
-                        //1st move secret?
-                        if (adequateTickets(SECRET,colourOfPlayer, 0)) { //check for adequate tickets for first move taking into consideration the first move
-                            if (locationFree(destination_first, colourOfPlayer)) { //check if first move destination location is free
 
-                                //2nd move normal?
-                                if (adequateTickets(ticket_second, colourOfPlayer, 0)) { //check for adequate tickets for second move taking into consideration the first move
-                                    if (locationFree(destination_second, colourOfPlayer)) { //check if second move destination location is free
+    //==================================STEP BY STEP GAME LOOP==========================================
+    //startRotate() lets every accept() ask the next player, so with players that answer straight away a whole rotation
+    //nests on the stack. advance() plays a single move instead: it asks the current player, plays the answer and returns,
+    //so a loop like while (!isGameOver()) advance(); keeps the same stack depth however long the game is.
+    //The player must answer before its makeMove returns, which is the case for AIs that compute their move in makeMove.
+    public Move advance() {
 
-                                        moves.add(new DoubleMove(colourOfPlayer, SECRET, destination_first, ticket_second, destination_second));
-                                    }
-                                }
-                            }
-                        }
+        checkCanAdvance();
+        StepAnswer answer = new StepAnswer();
+        requestMove(answer);
+        if (!answer.answered) {
+            throw new IllegalStateException(getCurrentPlayer() + " did not answer makeMove synchronously");
+        }
+        play(answer.move); //the next player is asked by the next advance()
+        return answer.move;
+    }
 
 
-                        //1:NORMAL - 2:SECRET
-                        //1st move normal ticket?
-                        if (adequateTickets(ticket_first, colourOfPlayer,0)) { //check for adequate tickets on player
-                            if (locationFree(destination_first, colourOfPlayer)) { //check if first move destination location is free
+    //keeps the move a player chose in advance(); a player calling back twice is an error
+    private static class StepAnswer implements Consumer<Move> {
 
-                                //2nd move SECRET?
-                                if (adequateTickets(SECRET, colourOfPlayer, 0)) { //check for adequate tickets for second move taking into consideration the first move
-                                    if (locationFree(destination_second, colourOfPlayer)) { //check if second move destination location is free
+        private Move move;
+        private boolean answered;
 
-                                        moves.add(new DoubleMove(colourOfPlayer, ticket_first, destination_first, SECRET, destination_second));
-                                    }
-                                }
-                            }
-                        }
+        @Override
+        public void accept(Move move) {
 
+            if (answered) {
+                throw new IllegalStateException("move already chosen");
+            }
+            this.move = move;
+            this.answered = true;
+        }
+    }
 
-                        //1:SECRET - 2:SECRET
-                        if (adequateTickets(SECRET, colourOfPlayer,1)) { //check for adequate tickets on player
-                            if (locationFree(destination_first, colourOfPlayer)) { //check if first move destination location is free
 
-                                if (locationFree(destination_second, colourOfPlayer)) { //check if second move destination location is free
+    //checks that the next move can be asked for by advance() or advanceAsync()
+    private void checkCanAdvance() {
 
-                                    moves.add(new DoubleMove(colourOfPlayer, SECRET, destination_first, SECRET, destination_second));
+        if (awaitingMove) {
+            throw new IllegalStateException("a move is already being chosen");
+        }
 
-                                }
-                            }
-                        }
-                    }
-                }
-                //================================================OVER_DOUBLE MOVES============================================
-            }
+        //check if game is over, at the start of a rotation the spectators are told like in startRotate() if the last
+        //move did not tell them already
+        if (gameOver()){
+            if (currentPlayer == 0 && !gameOverNotified) notifyGameOver();
+            throw new IllegalStateException("GAME IS OVER");
         }
-        return moves; //all the valid moves the method generated
     }
 
 
-    @Override
-    public void startRotate() {
+    //Like advance(), but the player may answer later from any thread, e.g. a DeadlinePlayer around an AsyncPlayer.
+    //The answer is played on executor and the returned future completes with it once it has been played.
+    //Only one move is asked for at a time, so the moves are still played in order.
+    public CompletableFuture<Move> advanceAsync(Executor executor) {
 
-        currentPlayer = 0; //start from Mr. X
+        requireNonNull(executor);
+        checkCanAdvance();
+        awaitingMove = true;
 
-        //check if game is over before game starts
-        if (isGameOver()){
-            Set<Colour> winningPlayers;
-            winningPlayers = getWinningPlayers();
-            for (Spectator spectator:spectators){ //notify spectators with winning players that game is over
-                spectator.onGameOver(this, winningPlayers);
-            }
-            throw new IllegalStateException("GAME IS OVER");
+        CompletableFuture<Move> answer = new CompletableFuture<>();
+        try {
+            requestMove(move -> {
+                if (!answer.complete(move)) {
+                    throw new IllegalStateException("move already chosen");
+                }
+            });
+        } catch (RuntimeException e) {
+            awaitingMove = false;
+            throw e;
         }
 
-        else{
-            int location;
-            location = players.get(currentPlayer).location();
-            Player player;
-            player = players.get(currentPlayer).player();
+        return answer.thenApplyAsync(move -> {
+            try {
+                play(move);
+            } finally {
+                awaitingMove = false;
+            }
+            return move;
+        }, executor);
+    }
+
 
-            Set<Move> moves;
-            moves = validMove(location, getCurrentPlayer());
+    //Plays the whole game with advanceAsync(), the returned future completes with the winning players.
+    //Every move is asked for from a new task on executor, so the stack does not grow; executor must not run tasks inline.
+    public CompletableFuture<Set<Colour>> playAsync(Executor executor) {
 
-            player.makeMove(this, location, moves, this); //ask for move
+        requireNonNull(executor);
+        CompletableFuture<Set<Colour>> winners = new CompletableFuture<>();
+        executor.execute(() -> playNext(executor, winners));
+        return winners;
+    }
+
+
+    private void playNext(Executor executor, CompletableFuture<Set<Colour>> winners) {
+
+        try {
+            if (gameOver()) {
+                winners.complete(getWinningPlayers());
+                return;
+            }
+            advanceAsync(executor).whenComplete((move, error) -> {
+                if (error != null) winners.completeExceptionally(error);
+                else executor.execute(() -> playNext(executor, winners));
+            });
+        } catch (RuntimeException e) {
+            winners.completeExceptionally(e);
         }
     }
+    //================================OVER_STEP BY STEP GAME LOOP=======================================
+
 
     @Override
     public Collection<Spectator> getSpectators() {
@@ -419,70 +510,15 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
     @Override
     public List<Colour> getPlayers() {
 
-        ArrayList<Colour> colourList = new ArrayList<>();
-        for (ScotlandYardPlayer player : players) {
-            colourList.add(player.colour());
-        }
-
-        return Collections.unmodifiableList(colourList);
+        return colours; //the players never change, so the list is made once in the constructor
     }
 
     @Override
     //get winning players returns a set of the winning players if game is over, otherwise the list is empty
+    //the win conditions are kept up to date by winConditions as the moves are played <= see visit()
     public Set<Colour> getWinningPlayers() {
 
-        Set<Colour> winningPlayers= new HashSet<>();
-        Set<Move> moves;
-
-        //===============================MrX WINS===========================
-        //Detectives are stuck
-        int temp=0;
-        for (ScotlandYardPlayer player : players.subList(1,players.size())){
-
-            moves = validMove(player.location(), player.colour()); //generates the valid moves for player
-            PassMove passmove = new PassMove(player.colour());     //creates a pass move object
-
-            if (moves.contains(passmove)) //checks if detective has nowhere to go
-                temp+=1;
-        }
-        if (temp == (players.size()-1)){ //if all detectives are stuck -> Mr. X wins
-            winningPlayers.add(BLACK);
-        }
-        //
-
-        //MrX not captured in last round
-        if (currentRound == rounds.size() && currentPlayer == 0){ //if current round is the last & current player is Mr.X
-            winningPlayers.add(BLACK);
-        }
-        //
-        //============================OVER_MrX WINS===========================
-
-
-        //---------------------------------DETECTIVES WIN------------------------------
-        //MrX cornered or MrX cannot move
-        moves = validMove(players.get(0).location(), BLACK); //generate valid moves for Mr. X
-        //If Mr. X has nowhere to go -> detectives win
-        if (moves.isEmpty() && currentPlayer==0){
-            for (ScotlandYardPlayer player: players.subList(1,players.size())){
-                winningPlayers.add(player.colour());
-            }
-        }
-        //
-
-        //MrX captured
-        //check if at least one detective is on the same location as Mr. X -> detectives win
-        for (ScotlandYardPlayer player : players.subList(1,players.size())){
-            if (player.location() == players.get(0).location()){
-                for (ScotlandYardPlayer playerCol: players.subList(1,players.size())){
-                    winningPlayers.add(playerCol.colour());
-                }
-                break;
-            }
-        }
-        //
-        //------------------------------OVER_DETECTIVES WIN------------------------------
-
-        return Collections.unmodifiableSet(winningPlayers);
+        return winConditions.winningPlayers(currentPlayer, currentRound);
     }
 
     @Override
@@ -494,10 +530,9 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
         }
 
         //Location of detective
-        for (ScotlandYardPlayer playerConf : players){
-            if (playerConf.colour()==colour) {
-                return Optional.of(playerConf.location());
-            }
+        ScotlandYardPlayer playerConf = player(colour);
+        if (playerConf != null) {
+            return Optional.of(playerConf.location());
         }
         return Optional.empty();
     }
@@ -505,21 +540,24 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
     @Override
     public Optional<Integer> getPlayerTickets(Colour colour, Ticket ticket) {
 
-        for (ScotlandYardPlayer playerConf : players){
-            if (playerConf.colour()==colour) {
-                return Optional.of(playerConf.tickets().get(ticket));
-            }
+        ScotlandYardPlayer playerConf = player(colour);
+        if (playerConf != null) {
+            return Optional.of(playerConf.ticketCount(ticket));
         }
         return Optional.empty();
     }
 
+
+    //the player of a colour in constant time, null if the colour is not playing
+    private ScotlandYardPlayer player(Colour colour) {
+
+        return colour == null ? null : playerOf[colour.ordinal()];
+    }
+
     @Override
     public boolean isGameOver() {
 
-        if (getWinningPlayers().isEmpty())  //if the set is empty, then the game is not over
-            return false;
-        else
-            return true;
+        return winConditions.isGameOver(currentPlayer, currentRound);
     }
 
     @Override
@@ -537,16 +575,23 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
     @Override
     public List<Boolean> getRounds() {
 
-        return Collections.unmodifiableList(rounds);
+        return rounds;
     }
 
     @Override
     public Graph<Integer, Transport> getGraph() {
 
-        ImmutableGraph<Integer, Transport> graph = new ImmutableGraph<>(this.graph);
+        ImmutableGraph<Integer, Transport> graph = immutableGraph; //created once, never copied
+        if (graph == null) immutableGraph = graph = compiledMap.toGraph(); //a race builds an equal graph at worst
         return graph;
     }
 
+    @Override
+    public IndexedGraph getIndexedGraph() {
+
+        return indexedGraph;
+    }
+
 
 
 
@@ -556,8 +601,10 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
     @Override
     public void visit(PassMove move) {
 
+        winConditions.passed();
+
         for (Spectator spectator : spectators){
-            spectator.onMoveMade(this, move);
+            spectator.onMoveMade(spectatorView(), move);
         }
 
     }
@@ -570,16 +617,13 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
     public void visit(TicketMove move) {
 
         //finds which player plays the move
-        ScotlandYardPlayer player_move = players.get(0);
-        for (ScotlandYardPlayer player : players){
-            if (player.colour() == move.colour()){
-                player_move = player;
-                break;
-            }
-        }
-        //
+        ScotlandYardPlayer player_move = player(move.colour());
 
         //updates the player’s location
+        if (!move.colour().equals(BLACK)) {
+            detectiveLocations.clear(player_move.location());
+            detectiveLocations.set(move.destination());
+        }
         player_move.location(move.destination());
         TicketMove hiddenMove = move;
 
@@ -588,6 +632,7 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
 
             players.get(0).addTicket(move.ticket());
             player_move.removeTicket(move.ticket());
+            winConditions.moved(player_move);
         }
 
 
@@ -595,6 +640,7 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
         else{
 
             player_move.removeTicket(move.ticket());
+            winConditions.moved(player_move);
 
             if (!rounds.get(currentRound)){ //if current round is hidden -> update the move with latest location of Mr. X
                 hiddenMove = new TicketMove(move.colour(), move.ticket(), blackLatestLocation);
@@ -608,14 +654,14 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
             // and the onRoundStarted method is called to notify all spectators
             currentRound+=1;
             for (Spectator spectator : spectators){
-                spectator.onRoundStarted(this, currentRound);
+                spectator.onRoundStarted(spectatorView(), currentRound);
             }
             //
         }
 
         //All spectators are notified for the new move played by the detectives or Mr. X
         for (Spectator spectator : spectators){
-            spectator.onMoveMade(this, hiddenMove);
+            spectator.onMoveMade(spectatorView(), hiddenMove);
         }
     }
 
@@ -654,15 +700,17 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
         //DOUBLE MOVE
         //remove Double ticket from Mr.X
         player_move.removeTicket(DOUBLE);
+        winConditions.moved(player_move);
         //Notify all spectators that DOUBLE move was played
         for (Spectator spectator : spectators){
-            spectator.onMoveMade(this, double_hiddenMove);
+            spectator.onMoveMade(spectatorView(), double_hiddenMove);
         }
         //
 
         //FIRST MOVE
         //remove First move ticket from Mr.X
         player_move.removeTicket(move.firstMove().ticket());
+        winConditions.moved(player_move);
         if (rounds.get(currentRound)){ //if the round is reveal, update Mr. X's latest location
             blackLatestLocation = move.firstMove().destination();
         }
@@ -671,8 +719,8 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
         //All spectators are notified that a new round has started and that a new move was made
         for (Spectator spectator : spectators){
 
-            spectator.onRoundStarted(this, currentRound);
-            spectator.onMoveMade(this, first_hiddenMove);
+            spectator.onRoundStarted(spectatorView(), currentRound);
+            spectator.onMoveMade(spectatorView(), first_hiddenMove);
         }
         //
 
@@ -680,6 +728,7 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
         //SECOND MOVE
         //remove Second move ticket from Mr.X
         player_move.removeTicket(move.secondMove().ticket());
+        winConditions.moved(player_move);
         if (rounds.get(currentRound)){ //current round reveal, update Mr. X's latest location
             blackLatestLocation = move.secondMove().destination();
         }
@@ -688,8 +737,8 @@ public class ScotlandYardModel implements ScotlandYardGame, Consumer<Move>, Move
         //All spectators are notified that a new round has started and that a new move was made
         for (Spectator spectator : spectators){
 
-            spectator.onRoundStarted(this, currentRound);
-            spectator.onMoveMade(this, second_hiddenMove);
+            spectator.onRoundStarted(spectatorView(), currentRound);
+            spectator.onMoveMade(spectatorView(), second_hiddenMove);
         }
         //
     }
@@ -1,17 +1,30 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * A class that contains all the information about a particular player.
+ *
+ * <br>
+ * Tickets are counted in an array indexed by {@link Ticket#ordinal()}, the
+ * layout {@link MoveGenerator} reads, so using a ticket neither boxes nor
+ * hashes. {@link #tickets()} is a map view of the same counts.
  */
 public class ScotlandYardPlayer {
 
+	private static final Ticket[] TICKETS = Ticket.values();
+
 	private final Player player;
 	private final Colour colour;
 	private int location;
-	private final Map<Ticket, Integer> tickets;
+	private final int[] ticketCounts = new int[MoveGenerator.TICKET_SLOTS];
+	private final Map<Ticket, Integer> tickets = new TicketView();
 
 	/**
 	 * Constructs a new ScotlandYardPlayer object.
@@ -26,7 +39,7 @@ public class ScotlandYardPlayer {
 		this.player = player;
 		this.colour = colour;
 		this.location = location;
-		this.tickets = new HashMap<>(tickets);
+		MoveGenerator.ticketCounts(tickets, ticketCounts, 0);
 	}
 
 	/**
@@ -78,19 +91,37 @@ public class ScotlandYardPlayer {
 	}
 
 	/**
-	 * @return the player's current tickets.
+	 * @return the player's current tickets, a view of the counts that has
+	 *         every ticket and whose counts can be set with
+	 *         {@link Map#put}; never null
 	 */
 	public Map<Ticket, Integer> tickets() {
 		return tickets;
 	}
 
+	/**
+	 * @param ticket the ticket to count; not null
+	 * @return the number of the given ticket the player has
+	 */
+	public int ticketCount(Ticket ticket) {
+		return ticketCounts[ticket.ordinal()];
+	}
+
+	/**
+	 * The counts themselves, indexed by {@link Ticket#ordinal()}, for
+	 * {@link MoveGenerator}; not to be modified
+	 */
+	int[] ticketCounts() {
+		return ticketCounts;
+	}
+
 	/**
 	 * Adds a ticket to the player's current tickets.
 	 *
 	 * @param ticket the ticket to be added.
 	 */
 	public void addTicket(Ticket ticket) {
-		adjustTicketCount(ticket, 1);
+		ticketCounts[ticket.ordinal()] += 1;
 	}
 
 	/**
@@ -99,14 +130,7 @@ public class ScotlandYardPlayer {
 	 * @param ticket the ticket to be removed.
 	 */
 	public void removeTicket(Ticket ticket) {
-		adjustTicketCount(ticket, -1);
-	}
-
-	private void adjustTicketCount(Ticket ticket, int by) {
-		Integer ticketCount = tickets.get(ticket);
-		ticketCount += by;
-		tickets.remove(ticket);
-		tickets.put(ticket, ticketCount);
+		ticketCounts[ticket.ordinal()] -= 1;
 	}
 
 	/**
@@ -116,7 +140,7 @@ public class ScotlandYardPlayer {
 	 * @return true if the player has the given ticket, false otherwise
 	 */
 	public boolean hasTickets(Ticket ticket) {
-		return tickets.get(ticket) != 0;
+		return ticketCounts[ticket.ordinal()] != 0;
 	}
 
 	/**
@@ -129,7 +153,105 @@ public class ScotlandYardPlayer {
 	 *         otherwise
 	 */
 	public boolean hasTickets(Ticket ticket, int quantityInclusive) {
-		return tickets.get(ticket) >= quantityInclusive;
+		return ticketCounts[ticket.ordinal()] >= quantityInclusive;
+	}
+
+	// map view of ticketCounts, with an entry per ticket in ordinal order
+	private final class TicketView extends AbstractMap<Ticket, Integer> {
+
+		private final Set<Entry<Ticket, Integer>> entries = new AbstractSet<Entry<Ticket, Integer>>() {
+			@Override
+			public Iterator<Entry<Ticket, Integer>> iterator() {
+				return new Iterator<Entry<Ticket, Integer>>() {
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return next < TICKETS.length;
+					}
+
+					@Override
+					public Entry<Ticket, Integer> next() {
+						if (!hasNext()) throw new NoSuchElementException();
+						return new TicketEntry(TICKETS[next++]);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return TICKETS.length;
+			}
+		};
+
+		@Override
+		public Set<Entry<Ticket, Integer>> entrySet() {
+			return entries;
+		}
+
+		@Override
+		public int size() {
+			return TICKETS.length;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Ticket;
+		}
+
+		@Override
+		public Integer get(Object key) {
+			return key instanceof Ticket ? ticketCounts[((Ticket) key).ordinal()] : null;
+		}
+
+		@Override
+		public Integer put(Ticket key, Integer value) {
+			Objects.requireNonNull(value);
+			int previous = ticketCounts[key.ordinal()];
+			ticketCounts[key.ordinal()] = value;
+			return previous;
+		}
+	}
+
+	private final class TicketEntry implements Map.Entry<Ticket, Integer> {
+
+		private final Ticket ticket;
+
+		TicketEntry(Ticket ticket) {
+			this.ticket = ticket;
+		}
+
+		@Override
+		public Ticket getKey() {
+			return ticket;
+		}
+
+		@Override
+		public Integer getValue() {
+			return ticketCounts[ticket.ordinal()];
+		}
+
+		@Override
+		public Integer setValue(Integer value) {
+			return tickets.put(ticket, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+			return ticket == that.getKey() && getValue().equals(that.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return ticket.hashCode() ^ getValue().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return ticket + "=" + getValue();
+		}
 	}
 
 	@Override
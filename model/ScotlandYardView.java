@@ -106,4 +106,19 @@ public interface ScotlandYardView {
 	 */
 	Graph<Integer, Transport> getGraph();
 
+	/**
+	 * An indexed view of the graph the game is using, with constant time
+	 * adjacency lookups. Implementations must return the same instance on
+	 * every call of a game; the default implementation indexes
+	 * {@link #getGraph()} on every call and is only meant for views that are
+	 * not asked often. Callers that keep work derived from the graph should
+	 * compare graphs with {@link IndexedGraph#sameMap(IndexedGraph)}, not by
+	 * identity.
+	 *
+	 * @return an indexed graph; never null
+	 */
+	default IndexedGraph getIndexedGraph() {
+		return new IndexedGraph(getGraph());
+	}
+
 }
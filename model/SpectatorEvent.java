@@ -0,0 +1,126 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * One {@link Spectator} callback as an immutable value, published by a
+ * {@link SpectatorEventBus}. The view of an event is a {@link GameSnapshot}
+ * of the game as it was when the event happened, so it stays valid however
+ * late the event is delivered.
+ */
+public final class SpectatorEvent {
+
+	/**
+	 * The callback an event stands for
+	 */
+	public enum Kind {
+		/** {@link Spectator#onMoveMade} */
+		MOVE_MADE,
+		/** {@link Spectator#onRoundStarted} */
+		ROUND_STARTED,
+		/** {@link Spectator#onRotationComplete} */
+		ROTATION_COMPLETE,
+		/** {@link Spectator#onGameOver} */
+		GAME_OVER
+	}
+
+	private final Kind kind;
+	private final GameSnapshot view;
+	private final Move move;
+	private final int round;
+	private final Set<Colour> winningPlayers;
+
+	private SpectatorEvent(Kind kind, GameSnapshot view, Move move, int round,
+			Set<Colour> winningPlayers) {
+		this.kind = kind;
+		this.view = Objects.requireNonNull(view);
+		this.move = move;
+		this.round = round;
+		this.winningPlayers = winningPlayers;
+	}
+
+	static SpectatorEvent moveMade(GameSnapshot view, Move move) {
+		return new SpectatorEvent(Kind.MOVE_MADE, view, Objects.requireNonNull(move),
+				view.getCurrentRound(), null);
+	}
+
+	static SpectatorEvent roundStarted(GameSnapshot view, int round) {
+		return new SpectatorEvent(Kind.ROUND_STARTED, view, null, round, null);
+	}
+
+	static SpectatorEvent rotationComplete(GameSnapshot view) {
+		return new SpectatorEvent(Kind.ROTATION_COMPLETE, view, null, view.getCurrentRound(), null);
+	}
+
+	//the winners are read from the view, which is a copy
+	static SpectatorEvent gameOver(GameSnapshot view) {
+		return new SpectatorEvent(Kind.GAME_OVER, view, null, view.getCurrentRound(),
+				view.getWinningPlayers());
+	}
+
+	/**
+	 * @return the callback the event stands for; never null
+	 */
+	public Kind kind() {
+		return kind;
+	}
+
+	/**
+	 * @return the game as it was when the event happened; never null
+	 */
+	public GameSnapshot view() {
+		return view;
+	}
+
+	/**
+	 * @return the move made, null unless the event is
+	 *         {@link Kind#MOVE_MADE}
+	 */
+	public Move move() {
+		return move;
+	}
+
+	/**
+	 * @return the started round for {@link Kind#ROUND_STARTED}, the current
+	 *         round otherwise
+	 */
+	public int round() {
+		return round;
+	}
+
+	/**
+	 * @return the winners, null unless the event is {@link Kind#GAME_OVER}
+	 */
+	public Set<Colour> winningPlayers() {
+		return winningPlayers;
+	}
+
+	/**
+	 * Calls the spectator's callback of the event
+	 *
+	 * @param spectator the spectator; not null
+	 */
+	public void deliverTo(Spectator spectator) {
+		switch (kind) {
+			case MOVE_MADE:
+				spectator.onMoveMade(view, move);
+				break;
+			case ROUND_STARTED:
+				spectator.onRoundStarted(view, round);
+				break;
+			case ROTATION_COMPLETE:
+				spectator.onRotationComplete(view);
+				break;
+			case GAME_OVER:
+				spectator.onGameOver(view, winningPlayers);
+				break;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SpectatorEvent{" + kind + (move != null ? ", " + move : "") + ", round=" + round + '}';
+	}
+
+}
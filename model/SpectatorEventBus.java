@@ -0,0 +1,378 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Spectator} passing the game's events on to other spectators
+ * asynchronously, so a slow spectator does not slow the game down. Register
+ * the bus with the game and {@link #subscribe} the spectators to it instead.
+ *
+ * <br>
+ * Every callback becomes an immutable {@link SpectatorEvent} carrying a
+ * {@link GameSnapshot} of the view; a model's snapshot is made once per state
+ * of the game, so the events of one state share it. Each subscribed spectator
+ * has a bounded ring of events and a thread of its own that takes the events
+ * out in batches and calls the spectator, in the order the game published
+ * them. The {@link Overflow} policy of a subscription decides what happens
+ * when its ring is full. The game-over event is never dropped while the
+ * spectator's thread runs.
+ *
+ * <br>
+ * A spectator throwing an exception still gets the next events; the
+ * exception goes to its thread's uncaught exception handler. If an error ends
+ * the thread, the spectator gets no more events: they count as dropped, and
+ * a game waiting for room in its ring goes on.
+ *
+ * <br>
+ * Closing the bus delivers the events already published and stops the
+ * threads; events published after that are ignored.
+ */
+public class SpectatorEventBus implements Spectator, AutoCloseable {
+
+	/**
+	 * What publishing does when a spectator's ring is full
+	 */
+	public enum Overflow {
+		/**
+		 * The game waits until the spectator has taken events out. If the
+		 * waiting game thread is interrupted, the event is dropped and the
+		 * thread keeps its interrupt status
+		 */
+		BLOCK,
+		/**
+		 * The new event is dropped, the spectator misses it
+		 */
+		DROP,
+		/**
+		 * Waiting events that a later one supersedes are merged into it: of
+		 * the round-started and of the rotation-complete events only the
+		 * latest is kept, the oldest superseded one going first. Move and
+		 * game-over events are never discarded; when nothing can be merged
+		 * the game waits as with {@link #BLOCK}
+		 */
+		COALESCE
+	}
+
+	/**
+	 * Events a ring holds by default
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Events a spectator's thread takes out at once by default
+	 */
+	public static final int DEFAULT_BATCH = 64;
+
+	private static final AtomicInteger BUSES = new AtomicInteger();
+
+	private final int capacity;
+	private final int batchSize;
+	private final ThreadFactory threads;
+	private final List<Subscription> subscriptions = new ArrayList<>();
+	private volatile Subscription[] published = new Subscription[0];	//copy of subscriptions read by the game
+	private boolean closed;
+
+	/**
+	 * Creates a bus with rings of {@link #DEFAULT_CAPACITY} events, taken out
+	 * {@link #DEFAULT_BATCH} at a time by daemon threads
+	 */
+	public SpectatorEventBus() {
+		this(DEFAULT_CAPACITY, DEFAULT_BATCH, daemonThreads());
+	}
+
+	/**
+	 * Creates a bus
+	 *
+	 * @param capacity events each spectator's ring holds; greater than zero
+	 * @param batchSize events a spectator's thread takes out at once; greater
+	 *        than zero
+	 * @param threads creates the spectators' threads; not null
+	 */
+	public SpectatorEventBus(int capacity, int batchSize, ThreadFactory threads) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity <= 0");
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize <= 0");
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.threads = Objects.requireNonNull(threads);
+	}
+
+	private static ThreadFactory daemonThreads() {
+		int bus = BUSES.incrementAndGet();
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable,
+					"spectator-event-bus-" + bus + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Subscribes a spectator that the game waits for when its ring is full
+	 *
+	 * @param spectator the spectator; not null
+	 * @see #subscribe(Spectator, Overflow)
+	 */
+	public void subscribe(Spectator spectator) {
+		subscribe(spectator, Overflow.BLOCK);
+	}
+
+	/**
+	 * Subscribes a spectator and starts its thread. The spectator is called
+	 * on that thread only, with the events published from now on.
+	 *
+	 * @param spectator the spectator; not null
+	 * @param overflow what to do when the spectator's ring is full; not null
+	 * @throws IllegalStateException if the bus is closed
+	 */
+	public synchronized void subscribe(Spectator spectator, Overflow overflow) {
+		Objects.requireNonNull(spectator);
+		Objects.requireNonNull(overflow);
+		if (closed) throw new IllegalStateException("Bus closed");
+		Subscription subscription = new Subscription(spectator, overflow, capacity, batchSize);
+		subscription.thread = threads.newThread(subscription);
+		subscriptions.add(subscription);
+		published = subscriptions.toArray(new Subscription[0]);
+		subscription.thread.start();
+	}
+
+	/**
+	 * @param spectator a subscribed spectator; not null
+	 * @return the number of events the spectator missed because its ring was
+	 *         full, including the events {@link Overflow#COALESCE} merged into
+	 *         later ones; 0 if it is not subscribed
+	 */
+	public synchronized long dropped(Spectator spectator) {
+		long dropped = 0;
+		for (Subscription subscription : subscriptions)
+			if (subscription.spectator == spectator) dropped += subscription.dropped();
+		return dropped;
+	}
+
+	/**
+	 * Delivers the events published so far, then stops the spectators'
+	 * threads. Returns once they stopped, or when the calling thread is
+	 * interrupted.
+	 */
+	@Override
+	public void close() {
+		Subscription[] stopping;
+		synchronized (this) {
+			closed = true;
+			stopping = published;
+			published = new Subscription[0];
+		}
+		for (Subscription subscription : stopping)
+			subscription.close();
+		try {
+			for (Subscription subscription : stopping)
+				subscription.thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void onMoveMade(ScotlandYardView view, Move move) {
+		Subscription[] subscribers = published;
+		if (subscribers.length > 0) publish(subscribers, SpectatorEvent.moveMade(GameSnapshot.of(view), move));
+	}
+
+	@Override
+	public void onRoundStarted(ScotlandYardView view, int round) {
+		Subscription[] subscribers = published;
+		if (subscribers.length > 0)
+			publish(subscribers, SpectatorEvent.roundStarted(GameSnapshot.of(view), round));
+	}
+
+	@Override
+	public void onRotationComplete(ScotlandYardView view) {
+		Subscription[] subscribers = published;
+		if (subscribers.length > 0) publish(subscribers, SpectatorEvent.rotationComplete(GameSnapshot.of(view)));
+	}
+
+	@Override
+	public void onGameOver(ScotlandYardView view, Set<Colour> winningPlayers) {
+		Subscription[] subscribers = published;
+		if (subscribers.length > 0) publish(subscribers, SpectatorEvent.gameOver(GameSnapshot.of(view)));
+	}
+
+	private static void publish(Subscription[] subscribers, SpectatorEvent event) {
+		for (Subscription subscription : subscribers)
+			subscription.offer(event);
+	}
+
+	// the ring of one spectator and the thread emptying it
+	private static final class Subscription implements Runnable {
+
+		private final Spectator spectator;
+		private final Overflow overflow;
+		private final int batchSize;
+		private final SpectatorEvent[] ring;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private int head;			//index of the oldest event
+		private int count;
+		private long dropped;
+		private boolean closed;
+		private boolean stopped;	//the thread ended, after close() or because an error escaped the spectator
+		private Thread thread;
+
+		Subscription(Spectator spectator, Overflow overflow, int capacity, int batchSize) {
+			this.spectator = spectator;
+			this.overflow = overflow;
+			this.batchSize = batchSize;
+			this.ring = new SpectatorEvent[capacity];
+		}
+
+		void offer(SpectatorEvent event) {
+			lock.lock();
+			try {
+				if (closed) return;
+				if (stopped) {
+					dropped++;
+					return;
+				}
+				if (count == ring.length) {
+					boolean gameOver = event.kind() == SpectatorEvent.Kind.GAME_OVER;
+					if (overflow == Overflow.DROP && !gameOver) {
+						dropped++;
+						return;
+					} else if (overflow == Overflow.DROP) { //making room for the game-over event
+						remove(0);
+					} else if ((overflow == Overflow.BLOCK || !coalesce(event)) && !awaitRoom()) {
+						if (!closed) dropped++;
+						return;
+					}
+				}
+				ring[(head + count) % ring.length] = event;
+				count++;
+				if (count == 1) notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		// waits until the ring has room; false if the bus closed, the thread stopped or the waiting thread was
+		// interrupted in the meantime
+		private boolean awaitRoom() {
+			try {
+				while (count == ring.length && !closed && !stopped)
+					notFull.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return !closed && !stopped;
+		}
+
+		// removes the oldest waiting event that a later one, or the new event, supersedes; false if there is none
+		private boolean coalesce(SpectatorEvent event) {
+			boolean laterRound = event.kind() == SpectatorEvent.Kind.ROUND_STARTED;
+			boolean laterRotation = event.kind() == SpectatorEvent.Kind.ROTATION_COMPLETE;
+			int oldest = -1;
+			for (int i = count - 1; i >= 0; i--) { //newest first, so the kinds seen are the later ones
+				SpectatorEvent.Kind kind = ring[(head + i) % ring.length].kind();
+				if (kind == SpectatorEvent.Kind.ROUND_STARTED) {
+					if (laterRound) oldest = i;
+					laterRound = true;
+				} else if (kind == SpectatorEvent.Kind.ROTATION_COMPLETE) {
+					if (laterRotation) oldest = i;
+					laterRotation = true;
+				}
+			}
+			if (oldest < 0) return false;
+			remove(oldest);
+			return true;
+		}
+
+		// removes the i-th oldest waiting event, the newer ones move up
+		private void remove(int i) {
+			for (int at = i; at < count - 1; at++)
+				ring[(head + at) % ring.length] = ring[(head + at + 1) % ring.length];
+			ring[(head + count - 1) % ring.length] = null;
+			count--;
+			dropped++;
+		}
+
+		long dropped() {
+			lock.lock();
+			try {
+				return dropped;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void close() {
+			lock.lock();
+			try {
+				closed = true;
+				notEmpty.signal();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				deliver();
+			} finally {
+				lock.lock();
+				try {
+					stopped = true;
+					dropped += count; //never delivered
+					Arrays.fill(ring, null);
+					count = 0;
+					notFull.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		private void deliver() {
+			SpectatorEvent[] batch = new SpectatorEvent[batchSize];
+			while (true) {
+				int taken;
+				lock.lock();
+				try {
+					while (count == 0 && !closed)
+						notEmpty.awaitUninterruptibly();
+					if (count == 0) return; //closed and everything delivered
+					taken = Math.min(count, batchSize);
+					for (int i = 0; i < taken; i++) {
+						batch[i] = ring[head];
+						ring[head] = null;
+						head = (head + 1) % ring.length;
+					}
+					count -= taken;
+					notFull.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				for (int i = 0; i < taken; i++) {
+					try {
+						batch[i].deliverTo(spectator);
+					} catch (RuntimeException e) { //a failing spectator still gets the next events
+						Thread current = Thread.currentThread();
+						current.getUncaughtExceptionHandler().uncaughtException(current, e);
+					}
+					batch[i] = null;
+				}
+			}
+		}
+	}
+
+}
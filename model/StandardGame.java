@@ -148,14 +148,19 @@ public class StandardGame {
 	}
 
 	public static ImmutableGraph<Integer, Transport> standardGraph() throws IOException {
-		return ScotlandYardGraphReader.fromLines(readString("graph.txt"));
+		try (InputStream stream = resource("graph.txt")) {
+			return ScotlandYardGraphReader.fromStream(stream);
+		}
+	}
+
+	private static InputStream resource(String resource) throws IOException {
+		InputStream stream = StandardGame.class.getClassLoader().getResourceAsStream(resource);
+		if (stream == null) throw new IOException("Resource " + resource + " not found");
+		return stream;
 	}
 
 	private static List<String> readString(String resource) throws IOException {
-		try (InputStream stream = StandardGame.class
-				.getClassLoader()
-				.getResourceAsStream(resource)) {
-			if (stream == null) throw new IOException("Resource " + resource + " not found");
+		try (InputStream stream = resource(resource)) {
 			return new BufferedReader(
 					new InputStreamReader(stream, StandardCharsets.UTF_8))
 							.lines()
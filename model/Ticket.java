@@ -8,6 +8,16 @@ import java.util.Objects;
 public enum Ticket {
 	TAXI, BUS, UNDERGROUND, DOUBLE, SECRET;
 
+	// the transport each ticket pays for, the inverse of fromTransport
+	private static final Transport[] TRANSPORTS = new Transport[values().length];
+
+	static {
+		for (Transport transport : Transport.values()) {
+			Ticket ticket = fromTransport(transport);
+			if (ticket != SECRET) TRANSPORTS[ticket.ordinal()] = transport;
+		}
+	}
+
 	/**
 	 * Finds the ticket for a given transport type
 	 *
@@ -29,4 +39,15 @@ public enum Ticket {
 		}
 	}
 
+	/**
+	 * Finds the transport this ticket pays for, the inverse of
+	 * {@link #fromTransport(Transport)}
+	 *
+	 * @return the transport of a taxi, bus or underground ticket; null for a
+	 *         secret or double ticket, which is not for a single transport
+	 */
+	public Transport transport() {
+		return TRANSPORTS[ordinal()];
+	}
+
 }
@@ -0,0 +1,166 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static uk.ac.bris.cs.scotlandyard.model.Colour.BLACK;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the win conditions of a {@link ScotlandYardModel} up to date as moves
+ * are applied, so checking whether the game is over never has to generate the
+ * full move set of every player.
+ *
+ * <br>
+ * Tracks the number of stuck detectives, whether MrX has been captured and
+ * whether MrX can still move; the round limit only depends on the current
+ * round and player.
+ */
+final class WinConditionTracker {
+
+	private final MoveGenerator generator;
+	private final List<ScotlandYardPlayer> players;
+	private final BitSet detectiveLocations;
+	private final int rounds;
+
+	private final boolean[] stuck; //indexed like players, MrX's slot is unused
+	private int stuckDetectives;
+	private boolean captured;
+	private boolean mrXStuck;
+	private boolean mrXDirty = true; //MrX's moves are only checked when asked for
+
+	private final Set<Colour> mrXWins;
+	private final Set<Colour> detectivesWin;
+
+	//cached result of winningPlayers()
+	private int version;
+	private int cachedVersion = -1;
+	private int cachedPlayer;
+	private int cachedRound;
+	private Set<Colour> cachedWinners;
+
+	/**
+	 * @param generator the move generator of the game
+	 * @param players the players of the game, MrX first
+	 * @param detectiveLocations the locations occupied by detectives, kept up
+	 *        to date by the game
+	 * @param rounds the number of rounds of the game
+	 */
+	WinConditionTracker(MoveGenerator generator, List<ScotlandYardPlayer> players,
+			BitSet detectiveLocations, int rounds) {
+		this.generator = generator;
+		this.players = players;
+		this.detectiveLocations = detectiveLocations;
+		this.rounds = rounds;
+		this.stuck = new boolean[players.size()];
+
+		Set<Colour> detectives = new HashSet<>();
+		for (ScotlandYardPlayer player : players.subList(1, players.size()))
+			detectives.add(player.colour());
+		this.mrXWins = Collections.singleton(BLACK);
+		this.detectivesWin = Collections.unmodifiableSet(detectives);
+
+		updateDetectives();
+		captured = detectiveLocations.get(players.get(0).location());
+	}
+
+	/**
+	 * Called after a player's location or tickets changed
+	 *
+	 * @param player the player that moved
+	 */
+	void moved(ScotlandYardPlayer player) {
+		version += 1;
+		mrXDirty = true;
+		captured = detectiveLocations.get(players.get(0).location());
+		//MrX's location never blocks a detective, only detective moves can change who is stuck
+		if (player.isDetective()) updateDetectives();
+	}
+
+	/**
+	 * @return a number that changes whenever a player moved or passed
+	 */
+	int version() {
+		return version;
+	}
+
+	/**
+	 * Called after a player passed, nothing but the current player changed
+	 */
+	void passed() {
+		version += 1;
+	}
+
+	private void updateDetectives() {
+		stuckDetectives = 0;
+		for (int i = 1; i < players.size(); i++) {
+			ScotlandYardPlayer detective = players.get(i);
+			stuck[i] = !generator.hasTicketMove(detective.location(), detective.ticketCounts(), 0,
+					detectiveLocations);
+			if (stuck[i]) stuckDetectives += 1;
+		}
+	}
+
+	private boolean mrXStuck() {
+		if (mrXDirty) {
+			ScotlandYardPlayer mrX = players.get(0);
+			mrXStuck = !generator.hasTicketMove(mrX.location(), mrX.ticketCounts(), 0, detectiveLocations);
+			mrXDirty = false;
+		}
+		return mrXStuck;
+	}
+
+	private boolean mrXWins(int currentPlayer, int currentRound) {
+		return stuckDetectives == players.size() - 1 //all detectives are stuck
+				|| (currentRound == rounds && currentPlayer == 0); //MrX not captured in last round
+	}
+
+	private boolean detectivesWin(int currentPlayer) {
+		return captured || (currentPlayer == 0 && mrXStuck());
+	}
+
+	/**
+	 * @param currentPlayer index of the current player
+	 * @param currentRound the current round
+	 * @return true when the game is over, false otherwise
+	 */
+	boolean isGameOver(int currentPlayer, int currentRound) {
+		return mrXWins(currentPlayer, currentRound) || detectivesWin(currentPlayer);
+	}
+
+	/**
+	 * @param currentPlayer index of the current player
+	 * @param currentRound the current round
+	 * @return an immutable set of the winning players; could be empty but
+	 *         never null
+	 */
+	Set<Colour> winningPlayers(int currentPlayer, int currentRound) {
+		if (cachedVersion == version && cachedPlayer == currentPlayer
+				&& cachedRound == currentRound)
+			return cachedWinners;
+
+		boolean mrX = mrXWins(currentPlayer, currentRound);
+		boolean detectives = detectivesWin(currentPlayer);
+		Set<Colour> winners;
+		if (mrX && detectives) {
+			Set<Colour> both = new HashSet<>(detectivesWin);
+			both.add(BLACK);
+			winners = Collections.unmodifiableSet(both);
+		} else if (mrX) {
+			winners = mrXWins;
+		} else if (detectives) {
+			winners = detectivesWin;
+		} else {
+			winners = Collections.emptySet();
+		}
+
+		cachedVersion = version;
+		cachedPlayer = currentPlayer;
+		cachedRound = currentRound;
+		cachedWinners = winners;
+		return winners;
+	}
+
+}
@@ -0,0 +1,82 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+/**
+ * Zobrist-style 64 bit keys for the features of a Scotland Yard position. The
+ * hash of a position is the exclusive or of the keys of all its features, so
+ * it can be updated incrementally by xoring out a feature's old key and xoring
+ * in its new one, see {@link GameState#hash()}.
+ *
+ * <br>
+ * Instead of tables of random numbers the keys are derived by mixing the
+ * feature with a fixed seed, so they never need sizing to a graph and are the
+ * same in every game and every JVM.
+ */
+public final class Zobrist {
+
+	private static final long SEED = 0x5C07_1A4D_9A3E_B00BL;
+
+	private static final long LOCATION = 1;
+	private static final long TICKETS = 2;
+	private static final long TO_MOVE = 3;
+	private static final long ROUND = 4;
+	private static final long REVEALED = 5;
+
+	private Zobrist() {}
+
+	/**
+	 * @param colour the colour of the player; not null
+	 * @param location the location of the player
+	 * @return the key of a player being at a location
+	 */
+	public static long location(Colour colour, int location) {
+		return key(LOCATION, colour.ordinal(), location);
+	}
+
+	/**
+	 * @param colour the colour of the player; not null
+	 * @param ticket the ticket; not null
+	 * @param count the number of tickets the player has
+	 * @return the key of a player having a number of tickets; zero if the
+	 *         count is zero so players without a ticket need no key
+	 */
+	public static long tickets(Colour colour, Ticket ticket, int count) {
+		if (count == 0) return 0;
+		return key(TICKETS, colour.ordinal() * MoveGenerator.TICKET_SLOTS + ticket.ordinal(), count);
+	}
+
+	/**
+	 * @param colour the colour of the player whose turn it is; not null
+	 * @return the key of the side to move
+	 */
+	public static long toMove(Colour colour) {
+		return key(TO_MOVE, colour.ordinal(), 0);
+	}
+
+	/**
+	 * @param round the current round
+	 * @return the key of the current round
+	 */
+	public static long round(int round) {
+		return key(ROUND, 0, round);
+	}
+
+	/**
+	 * @param location the location Mr. X was last revealed at, 0 if he has
+	 *        not been revealed yet
+	 * @return the key of Mr. X's last revealed location; not part of
+	 *         {@link GameState#hash()}, for keys of what the detectives know
+	 */
+	public static long revealed(int location) {
+		return key(REVEALED, 0, location);
+	}
+
+	private static long key(long feature, int a, int b) {
+		long z = SEED + feature * 0x9E37_79B9_7F4A_7C15L
+				+ ((long) a << 32 | (b & 0xFFFF_FFFFL)) * 0xBF58_476D_1CE4_E5B9L;
+		// splitmix64 finalizer
+		z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
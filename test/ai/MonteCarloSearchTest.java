@@ -0,0 +1,137 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.Node;
+import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
+import uk.ac.bris.cs.scotlandyard.model.Colour;
+import uk.ac.bris.cs.scotlandyard.model.GameState;
+import uk.ac.bris.cs.scotlandyard.model.MoveGenerator;
+import uk.ac.bris.cs.scotlandyard.model.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.Transport;
+
+/**
+ * Tests that {@link MonteCarloSearch} pools the results of transposed
+ * positions in its {@link ResultPool} and stores its decisions in its
+ * {@link TranspositionTable}
+ */
+public class MonteCarloSearchTest {
+
+	private static final int ITERATIONS = 300;
+
+	// Mr. X at 1 can reach 4 by taxi then bus through 2, or by bus then taxi through 3;
+	// the detective moves between 10 and 11, away from him
+	private static GameState start() {
+		UndirectedGraph<Integer, Transport> graph = new UndirectedGraph<>();
+		for (int node : new int[] {1, 2, 3, 4, 5, 10, 11})
+			graph.addNode(new Node<>(node));
+		edge(graph, 1, 2, Transport.TAXI);
+		edge(graph, 2, 4, Transport.BUS);
+		edge(graph, 1, 3, Transport.BUS);
+		edge(graph, 3, 4, Transport.TAXI);
+		edge(graph, 4, 5, Transport.TAXI);
+		edge(graph, 10, 11, Transport.TAXI);
+		boolean[] rounds = new boolean[8];
+		int[] tickets = {4, 3, 3, 2, 5, 11, 8, 4, 0, 0};
+		return GameState.start(new MoveGenerator(graph), rounds, new Colour[] {Colour.BLACK, Colour.BLUE},
+				new int[] {1, 10}, tickets);
+	}
+
+	private static void edge(UndirectedGraph<Integer, Transport> graph, int a, int b, Transport transport) {
+		graph.addEdge(new Edge<>(graph.getNode(a), graph.getNode(b), transport));
+	}
+
+	// Mr. X's two moves, each answered by the detective
+	private static GameState play(Ticket first, int between, Ticket second) {
+		GameState state = start();
+		state.playTicket(first, between);
+		state.playTicket(Ticket.TAXI, 11);
+		state.playTicket(second, 4);
+		state.playTicket(Ticket.TAXI, 10);
+		return state;
+	}
+
+	@Test
+	public void testTransposedPositionsShareTheirKey() {
+		GameState throughTwo = play(Ticket.TAXI, 2, Ticket.BUS);
+		GameState throughThree = play(Ticket.BUS, 3, Ticket.TAXI);
+		assertEquals(throughTwo.locationAt(0), throughThree.locationAt(0));
+		assertEquals(MonteCarloSearch.positionKey(throughTwo), MonteCarloSearch.positionKey(throughThree));
+		assertNotEquals(MonteCarloSearch.positionKey(start()), MonteCarloSearch.positionKey(throughTwo));
+	}
+
+	@Test
+	public void testSearchPoolsEveryIterationAtTheRoot() {
+		GameState position = start();
+		MonteCarloSearch search = new MonteCarloSearch(60_000, ITERATIONS);
+		search.search(position, 1);
+
+		long pooled = search.pool().stats(MonteCarloSearch.positionKey(position));
+		assertEquals(search.iterations(), MonteCarloSearch.Node.visits(pooled));
+		assertEquals(search.root().stats, pooled);
+	}
+
+	@Test
+	public void testSearchPoolsTransposedPositionsOnce() {
+		MonteCarloSearch search = new MonteCarloSearch(60_000, ITERATIONS);
+		search.search(start(), 1);
+
+		//both orders of Mr. X's moves were searched, and every result of either went into the one entry of position 4
+		MonteCarloSearch.Node throughTwo = child(child(search.root(), MonteCarloSearch.encodeTicket(Ticket.TAXI, 2)),
+				MonteCarloSearch.encodeTicket(Ticket.BUS, 4));
+		MonteCarloSearch.Node throughThree = child(child(search.root(), MonteCarloSearch.encodeTicket(Ticket.BUS, 3)),
+				MonteCarloSearch.encodeTicket(Ticket.TAXI, 4));
+		assertTrue(throughTwo.visits() > 0);
+		assertTrue(throughThree.visits() > 0);
+		long pooled = search.pool().stats(MonteCarloSearch.positionKey(play(Ticket.TAXI, 2, Ticket.BUS)));
+		assertEquals(throughTwo.visits() + throughThree.visits(), MonteCarloSearch.Node.visits(pooled));
+		assertEquals(MonteCarloSearch.Node.wins(throughTwo.stats) + MonteCarloSearch.Node.wins(throughThree.stats),
+				MonteCarloSearch.Node.wins(pooled));
+	}
+
+	@Test
+	public void testSearchStoresDecisionByPositionHash() {
+		GameState position = start();
+		MonteCarloSearch search = new MonteCarloSearch(60_000, ITERATIONS);
+		long move = search.search(position, 1);
+
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		assertTrue(search.table().probe(position.hash(), entry));
+		assertEquals(move, entry.move);
+		assertEquals(ITERATIONS, entry.depth);
+		assertTrue(entry.score >= 0 && entry.score <= 1);
+	}
+
+	@Test
+	public void testPositionSearchedAsHardIsNotSearchedAgain() {
+		TranspositionTable table = new TranspositionTable(16);
+		long move = new MonteCarloSearch(60_000, ITERATIONS, 1, true, null, table).search(start(), 1);
+
+		//another game's search, with another seed, answers from the table
+		MonteCarloSearch again = new MonteCarloSearch(60_000, ITERATIONS, 1, true, null, table);
+		assertEquals(move, again.search(start(), 2));
+		assertEquals(0, again.iterations());
+
+		//a harder search searches
+		MonteCarloSearch harder = new MonteCarloSearch(60_000, ITERATIONS * 2, 1, true, null, table);
+		harder.search(start(), 3);
+		assertEquals(ITERATIONS * 2, harder.iterations());
+	}
+
+	private static MonteCarloSearch.Node child(MonteCarloSearch.Node node, long move) {
+		int index = Arrays.binarySearch(node.edges.moves, move);
+		assertTrue(index >= 0);
+		MonteCarloSearch.Node child = node.edges.children.get(index);
+		assertNotNull(child);
+		return child;
+	}
+
+}
@@ -0,0 +1,67 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the replacement policy of {@link TranspositionTable}; a table of two
+ * entries has a single bucket, so every key competes for the same entries
+ */
+public class TranspositionTableTest {
+
+	private static final long A = 0x1234_5678_9ABC_DEF0L;
+	private static final long B = 0x0FED_CBA9_8765_4321L;
+	private static final long C = 0x5555_AAAA_5555_AAAAL;
+
+	private final TranspositionTable table = new TranspositionTable(2);
+	private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+	@Test
+	public void testProbeReturnsStoredResult() {
+		table.store(A, 7, TranspositionTable.LOWER, 0.25f, 42);
+		assertTrue(table.probe(A, entry));
+		assertEquals(7, entry.depth);
+		assertEquals(TranspositionTable.LOWER, entry.bound);
+		assertEquals(0.25f, entry.score, 0);
+		assertEquals(42, entry.move);
+		assertFalse(table.probe(B, entry));
+	}
+
+	@Test
+	public void testPositionInSecondEntryIsUpdatedInPlace() {
+		table.store(A, 10, TranspositionTable.EXACT, 1, 1);
+		table.store(B, 1, TranspositionTable.EXACT, 2, 2);
+		table.store(B, 20, TranspositionTable.EXACT, 3, 3); //deeper than A, but B already has an entry
+
+		assertTrue(table.probe(A, entry));
+		assertEquals(10, entry.depth);
+		assertTrue(table.probe(B, entry));
+		assertEquals(20, entry.depth);
+		assertEquals(3, entry.move);
+	}
+
+	@Test
+	public void testShallowerResultOnlyReplacesSecondEntry() {
+		table.store(A, 10, TranspositionTable.EXACT, 1, 1);
+		table.store(B, 1, TranspositionTable.EXACT, 2, 2);
+		table.store(C, 2, TranspositionTable.EXACT, 3, 3);
+
+		assertTrue(table.probe(A, entry));
+		assertFalse(table.probe(B, entry));
+		assertTrue(table.probe(C, entry));
+	}
+
+	@Test
+	public void testNewSearchReplacesFirstEntry() {
+		table.store(A, 10, TranspositionTable.EXACT, 1, 1);
+		table.newSearch();
+		table.store(B, 1, TranspositionTable.EXACT, 2, 2);
+
+		assertFalse(table.probe(A, entry));
+		assertTrue(table.probe(B, entry));
+	}
+
+}
@@ -0,0 +1,170 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.Node;
+import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
+
+/**
+ * Tests that a {@link CompiledMap} plays like the graph it was compiled from
+ */
+public class CompiledMapTest {
+
+	private static final int NODES = 80;
+	private static final int HEADER_BYTES = 4 * 4 + 8;
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	@Test
+	public void testIndexOfCompiledMapMatchesIndexOfGraph() {
+		Graph<Integer, Transport> graph = map(1);
+		IndexedGraph expected = new IndexedGraph(graph);
+		IndexedGraph actual = new IndexedGraph(CompiledMap.wrap(CompiledMap.compile(graph)));
+		assertEquals(expected.fingerprint(), actual.fingerprint());
+		assertEquals(expected.nodeCount(), actual.nodeCount());
+		assertEquals(expected.edgeCount(), actual.edgeCount());
+		assertEquals(expected.maxNode(), actual.maxNode());
+		assertEquals(expected.contains(NODES + 1), actual.contains(NODES + 1));
+		for (int node = 0; node <= NODES; node++) {
+			assertEquals(expected.contains(node), actual.contains(node));
+			assertArrayEquals(sorted(expected.neighbours(node)), sorted(actual.neighbours(node)));
+			for (Transport transport : TRANSPORTS)
+				assertArrayEquals(sorted(expected.neighbours(node, transport)),
+						sorted(actual.neighbours(node, transport)));
+		}
+	}
+
+	@Test
+	public void testGameOnCompiledMapPlaysLikeGameOnGraph() {
+		Graph<Integer, Transport> graph = map(2);
+		CompiledMap map = CompiledMap.wrap(CompiledMap.compile(graph));
+		for (int game = 0; game < 20; game++) {
+			List<Move> onGraph = new ArrayList<>();
+			List<Move> onMap = new ArrayList<>();
+			play(new ScotlandYardModel(StandardGame.ROUNDS, graph, mrX(game), detective(game)), onGraph);
+			ScotlandYardModel model = new ScotlandYardModel(StandardGame.ROUNDS, map, mrX(game), detective(game));
+			play(model, onMap);
+			assertEquals(onGraph, onMap);
+			assertEquals(graph.size(), model.getGraph().size());
+			assertSame(model.getGraph(), model.getGraph());
+		}
+	}
+
+	@Test
+	public void testWrapRejectsDecreasingOffsets() {
+		ByteBuffer buffer = CompiledMap.compile(map(3));
+		int offsets = HEADER_BYTES + NODES * 4;
+		buffer.putInt(offsets + 4 * 5, buffer.getInt(offsets + 4 * 4) - 1);
+		assertRejected(buffer, "decrease");
+	}
+
+	@Test
+	public void testWrapRejectsOffsetsPastEdgeCount() {
+		ByteBuffer buffer = CompiledMap.compile(map(4));
+		int offsets = HEADER_BYTES + NODES * 4;
+		buffer.putInt(offsets + 4 * NODES, buffer.getInt(12) + 1);
+		assertRejected(buffer, "edge count");
+	}
+
+	@Test
+	public void testWrapRejectsDestinationOfMissingNode() {
+		ByteBuffer buffer = CompiledMap.compile(map(5));
+		int edges = HEADER_BYTES + NODES * 4 + (NODES + 1) * 4;
+		buffer.putInt(edges + 4 * 7, NODES << 2 | Transport.BUS.ordinal());
+		assertRejected(buffer, "leads to node index");
+	}
+
+	@Test
+	public void testWrapRejectsNodesOutOfOrder() {
+		ByteBuffer buffer = CompiledMap.compile(map(6));
+		buffer.putInt(HEADER_BYTES + 4 * 3, 1);
+		assertRejected(buffer, "ascending");
+	}
+
+	private static void assertRejected(ByteBuffer buffer, String message) {
+		try {
+			CompiledMap.wrap(buffer);
+			fail("corrupt map accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private static void play(ScotlandYardModel model, List<Move> moves) {
+		model.registerSpectator(new Spectator() {
+			@Override
+			public void onMoveMade(ScotlandYardView view, Move move) {
+				moves.add(move);
+			}
+		});
+		while (!model.isGameOver())
+			model.advance();
+	}
+
+	// the player always plays the same move of a set, whatever order the set is in
+	private static Player first() {
+		return (view, location, moves, callback) -> callback.accept(
+				moves.stream().min(Comparator.comparing(Object::toString)).get());
+	}
+
+	private static PlayerConfiguration mrX(int game) {
+		return new PlayerConfiguration.Builder(Colour.BLACK).using(first())
+				.with(tickets(4, 3, 3, 2, 5)).at(1 + game).build();
+	}
+
+	private static PlayerConfiguration detective(int game) {
+		return new PlayerConfiguration.Builder(Colour.BLUE).using(first())
+				.with(tickets(11, 8, 4, 0, 0)).at(NODES - game).build();
+	}
+
+	private static Map<Ticket, Integer> tickets(int taxi, int bus, int underground, int x2, int secret) {
+		Map<Ticket, Integer> tickets = new HashMap<>();
+		tickets.put(Ticket.TAXI, taxi);
+		tickets.put(Ticket.BUS, bus);
+		tickets.put(Ticket.UNDERGROUND, underground);
+		tickets.put(Ticket.DOUBLE, x2);
+		tickets.put(Ticket.SECRET, secret);
+		return tickets;
+	}
+
+	private static int[] sorted(int[] values) {
+		int[] copy = values.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+
+	// a connected random map with parallel edges of different transports
+	private static Graph<Integer, Transport> map(long seed) {
+		Random random = new Random(seed);
+		UndirectedGraph<Integer, Transport> graph = new UndirectedGraph<>();
+		for (int node = 1; node <= NODES; node++)
+			graph.addNode(new Node<>(node));
+		for (int node = 2; node <= NODES; node++)
+			graph.addEdge(new Edge<>(graph.getNode(1 + random.nextInt(node - 1)), graph.getNode(node),
+					Transport.TAXI));
+		for (int i = 0; i < NODES * 2; i++) {
+			int a = 1 + random.nextInt(NODES);
+			int b = 1 + random.nextInt(NODES);
+			if (a != b) graph.addEdge(new Edge<>(graph.getNode(a), graph.getNode(b),
+					TRANSPORTS[random.nextInt(TRANSPORTS.length)]));
+		}
+		return graph;
+	}
+
+}
@@ -0,0 +1,229 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.gamekit.graph.Edge;
+import uk.ac.bris.cs.gamekit.graph.Graph;
+import uk.ac.bris.cs.gamekit.graph.Node;
+import uk.ac.bris.cs.gamekit.graph.UndirectedGraph;
+
+/**
+ * Tests that recorded games replay the same on the same map however it was
+ * loaded
+ */
+public class GameRecordTest {
+
+	private static final int NODES = 60;
+	private static final Transport[] TRANSPORTS = {Transport.TAXI, Transport.BUS, Transport.UNDERGROUND,
+			Transport.FERRY};
+	private static final List<Boolean> ROUNDS = Collections.unmodifiableList(Arrays.asList(
+			false, false, true, false, false, false, false, true, false, false, false, false, true,
+			false, false, false, false, true, false, false, false, false, false, true));
+
+	@Test
+	public void testMapsLoadedDifferentlyOrderNeighboursDifferently() {
+		IndexedGraph text = new IndexedGraph(map(1));
+		IndexedGraph compiled = new IndexedGraph(compiled(map(1)));
+		assertEquals(text.fingerprint(), compiled.fingerprint());
+		boolean reordered = false;
+		for (int node = 1; node <= NODES; node++)
+			reordered |= !Arrays.equals(text.neighbours(node), compiled.neighbours(node));
+		assertTrue("the maps should differ in neighbour order for the tests to mean anything", reordered);
+	}
+
+	@Test
+	public void testGameRecordedOnTextMapReplaysOnCompiledMap() {
+		Graph<Integer, Transport> map = map(2);
+		replayOnOtherLoad(new MoveGenerator(map), new MoveGenerator(compiled(map)), 2);
+	}
+
+	@Test
+	public void testGameRecordedOnCompiledMapReplaysOnTextMap() {
+		Graph<Integer, Transport> map = map(3);
+		replayOnOtherLoad(new MoveGenerator(compiled(map)), new MoveGenerator(map), 3);
+	}
+
+	@Test
+	public void testFailedFlushKeepsWhatWasNotWritten() {
+		Graph<Integer, Transport> map = map(4);
+		MoveGenerator generator = new MoveGenerator(map);
+		Random random = new Random(4);
+		List<PlayerConfiguration> configurations = configurations(random);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WritableByteChannel written = Channels.newChannel(out);
+		boolean[] failing = {true};
+		WritableByteChannel channel = new WritableByteChannel() {
+			@Override
+			public int write(ByteBuffer source) throws IOException {
+				if (failing[0]) throw new IOException("disk full");
+				return written.write(source);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {}
+		};
+		GameRecorder recorder = new GameRecorder(channel, ROUNDS, generator, configurations,
+				GameRecorder.MIN_BUFFER);
+		GameState state = start(generator, configurations);
+		List<Move> played = new ArrayList<>();
+		while (!state.isGameOver()) {
+			Move move = randomMove(state, random);
+			recorder.record(move);
+			state.apply(move);
+			played.add(move);
+		}
+		try {
+			recorder.flush();
+			fail("the write should fail");
+		} catch (UncheckedIOException e) {
+			assertEquals(0, out.size());
+		}
+		failing[0] = false;
+		recorder.flush();
+
+		GameRecord.Replay replay = GameRecord.read(ByteBuffer.wrap(out.toByteArray())).replay(generator);
+		List<Move> replayed = new ArrayList<>();
+		while (replay.hasNext())
+			replayed.add(replay.next());
+		assertEquals(played, replayed);
+	}
+
+	private static void replayOnOtherLoad(MoveGenerator recordedOn, MoveGenerator replayedOn, long seed) {
+		Random random = new Random(seed);
+		for (int game = 0; game < 50; game++) {
+			List<PlayerConfiguration> configurations = configurations(random);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			GameRecorder recorder = new GameRecorder(Channels.newChannel(out), ROUNDS, recordedOn,
+					configurations, GameRecorder.MIN_BUFFER);
+			GameState state = start(recordedOn, configurations);
+			List<Move> played = new ArrayList<>();
+			while (!state.isGameOver()) {
+				Move move = randomMove(state, random);
+				recorder.record(move);
+				state.apply(move);
+				played.add(move);
+			}
+			recorder.flush();
+
+			GameRecord.Replay replay = GameRecord.read(ByteBuffer.wrap(out.toByteArray())).replay(replayedOn);
+			List<Move> replayed = new ArrayList<>();
+			while (replay.hasNext())
+				replayed.add(replay.next());
+			assertEquals(played, replayed);
+			assertTrue(replay.state().isGameOver());
+		}
+	}
+
+	private static Move randomMove(GameState state, Random random) {
+		List<Move> moves = new ArrayList<>();
+		state.generate(new MoveSink() {
+			@Override
+			public void ticketMove(Colour colour, Ticket ticket, int destination) {
+				moves.add(new TicketMove(colour, ticket, destination));
+			}
+
+			@Override
+			public void doubleMove(Colour colour, Ticket first, int firstDestination, Ticket second,
+					int secondDestination) {
+				moves.add(new DoubleMove(colour, first, firstDestination, second, secondDestination));
+			}
+
+			@Override
+			public void passMove(Colour colour) {
+				moves.add(new PassMove(colour));
+			}
+		});
+		assertFalse(moves.isEmpty());
+		return moves.get(random.nextInt(moves.size()));
+	}
+
+	private static GameState start(MoveGenerator generator, List<PlayerConfiguration> configurations) {
+		boolean[] rounds = new boolean[ROUNDS.size()];
+		for (int i = 0; i < rounds.length; i++)
+			rounds[i] = ROUNDS.get(i);
+		Colour[] colours = new Colour[configurations.size()];
+		int[] locations = new int[colours.length];
+		int[] tickets = new int[colours.length * MoveGenerator.TICKET_SLOTS];
+		for (int i = 0; i < colours.length; i++) {
+			colours[i] = configurations.get(i).colour;
+			locations[i] = configurations.get(i).location;
+			MoveGenerator.ticketCounts(configurations.get(i).tickets, tickets, i * MoveGenerator.TICKET_SLOTS);
+		}
+		return GameState.start(generator, rounds, colours, locations, tickets);
+	}
+
+	private static List<PlayerConfiguration> configurations(Random random) {
+		List<Integer> locations = new ArrayList<>();
+		for (int node = 1; node <= NODES; node++)
+			locations.add(node);
+		Collections.shuffle(locations, random);
+		List<PlayerConfiguration> configurations = new ArrayList<>();
+		for (Colour colour : Colour.values()) {
+			configurations.add(new PlayerConfiguration.Builder(colour)
+					.using((view, location, moves, callback) -> {})
+					.with(colour.isMrX() ? tickets(4, 3, 3, 2, 5) : tickets(11, 8, 4, 0, 0))
+					.at(locations.get(colour.ordinal()))
+					.build());
+		}
+		return configurations;
+	}
+
+	private static Map<Ticket, Integer> tickets(int taxi, int bus, int underground, int x2, int secret) {
+		Map<Ticket, Integer> tickets = new HashMap<>();
+		tickets.put(Ticket.TAXI, taxi);
+		tickets.put(Ticket.BUS, bus);
+		tickets.put(Ticket.UNDERGROUND, underground);
+		tickets.put(Ticket.DOUBLE, x2);
+		tickets.put(Ticket.SECRET, secret);
+		return tickets;
+	}
+
+	// a connected random map, edges added in random order as a text map may list them
+	private static Graph<Integer, Transport> map(long seed) {
+		Random random = new Random(seed);
+		UndirectedGraph<Integer, Transport> graph = new UndirectedGraph<>();
+		for (int node = 1; node <= NODES; node++)
+			graph.addNode(new Node<>(node));
+		List<int[]> edges = new ArrayList<>();
+		for (int node = 2; node <= NODES; node++)
+			edges.add(new int[] {1 + random.nextInt(node - 1), node, 0});
+		for (int i = 0; i < NODES * 2; i++)
+			edges.add(new int[] {1 + random.nextInt(NODES), 1 + random.nextInt(NODES),
+					random.nextInt(TRANSPORTS.length)});
+		Collections.shuffle(edges, random);
+		for (int[] edge : edges) {
+			if (edge[0] == edge[1]) continue;
+			graph.addEdge(new Edge<>(graph.getNode(edge[0]), graph.getNode(edge[1]), TRANSPORTS[edge[2]]));
+		}
+		return graph;
+	}
+
+	private static Graph<Integer, Transport> compiled(Graph<Integer, Transport> map) {
+		return CompiledMap.wrap(CompiledMap.compile(map)).toGraph();
+	}
+
+}